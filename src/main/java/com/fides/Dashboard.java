@@ -0,0 +1,64 @@
+//   Copyright 2012 Giuseppe Iacono, Felipe Munoz Castillo
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package com.fides;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Follow the log files of a running test and serve a live dashboard on
+ * localhost. Once the test is over the usual reports are generated.
+ * 
+ * @goal dashboard
+ */
+public class Dashboard extends Report
+{
+	/**
+	 * Localhost port of the dashboard.
+	 * 
+	 * @parameter expression="${grinder.dashboard.port}" default-value="8090"
+	 */
+	private int dashboardPort;
+
+	/**
+	 * Seconds between refreshes of the dashboard.
+	 * 
+	 * @parameter expression="${grinder.dashboard.interval}" default-value="5"
+	 */
+	private int dashboardInterval;
+
+	/**
+	 * Constructor
+	 */
+	public Dashboard() {
+		super();
+	}
+
+	public void execute()
+	{
+		// override the analyzer.properties settings for this goal only
+		Map<String, String> overrides = new HashMap<String, String>();
+		overrides.put("follow", "true");
+		overrides.put("follow_interval", String.valueOf(dashboardInterval));
+		overrides.put("dashboard_port", String.valueOf(dashboardPort));
+		Map<String, String> previous = setOverrides(overrides);
+		
+		try {
+			super.execute();
+		} finally {
+			restoreOverrides(previous);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+//   Copyright 2012 Giuseppe Iacono, Felipe Munoz Castillo
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+
+package com.fides;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Merge the sketches written by the report goal on each agent into a report
+ * of the whole cluster. No log files are needed.
+ * 
+ * @goal merge
+ */
+public class MergeSketches extends Report
+{
+	/**
+	 * Sketch files, or directories of them, separated by commas.
+	 * 
+	 * @parameter expression="${grinder.sketches}"
+	 * @required
+	 */
+	private String sketches;
+
+	/**
+	 * Constructor
+	 */
+	public MergeSketches() {
+		super();
+	}
+
+	public void execute()
+	{
+		// override the analyzer.properties settings for this goal only
+		Map<String, String> overrides = new HashMap<String, String>();
+		overrides.put("merge_sketches", sketches);
+		Map<String, String> previous = setOverrides(overrides);
+		
+		// the sketches stand in for the log files
+		new File(getLOG_DIRECTORY()).mkdirs();
+		
+		try {
+			super.execute();
+		} finally {
+			restoreOverrides(previous);
+		}
+	}
+}
@@ -19,11 +19,14 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jtmb.grinderAnalyzer.Configuration;
 import org.python.util.PythonInterpreter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,6 +68,40 @@ public class Report extends GrinderPropertiesConfigure
 	public Logger getLogger() {
 		return logger;
 	}
+	
+	/**
+	 * Overrides analyzer.properties settings through system properties
+	 * (see Configuration.OVERRIDE_PREFIX).
+	 * 
+	 * @param overrides setting names and values
+	 * @return the system properties they replace, null for unset ones
+	 */
+	protected static Map<String, String> setOverrides(Map<String, String> overrides)
+	{
+		Map<String, String> previous = new HashMap<String, String>();
+		for (Map.Entry<String, String> override : overrides.entrySet()) {
+			String key = Configuration.OVERRIDE_PREFIX + override.getKey();
+			previous.put(key, System.setProperty(key, override.getValue()));
+		}
+		return previous;
+	}
+	
+	/**
+	 * Puts back the system properties replaced by setOverrides, so that
+	 * later goals in the same build see the analyzer.properties settings.
+	 * 
+	 * @param previous the result of setOverrides
+	 */
+	protected static void restoreOverrides(Map<String, String> previous)
+	{
+		for (Map.Entry<String, String> property : previous.entrySet()) {
+			if (property.getValue() == null) {
+				System.clearProperty(property.getKey());
+			} else {
+				System.setProperty(property.getKey(), property.getValue());
+			}
+		}
+	}
     
     /**
 	 * Create HTML reports of LOG_DIRECTORY's file
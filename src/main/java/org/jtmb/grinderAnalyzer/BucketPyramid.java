@@ -0,0 +1,138 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The counters of a test at several fixed resolutions, for charts that zoom
+ * into a time range (see {@link DashboardServer}).
+ * 
+ * Every level is a {@link BucketStore} with a minimum bucket width: the
+ * configured resolutions rounded to a power of two ms, so 1, 10, 60 and
+ * 600 seconds become 1.024, 8.192, 65.536 and 524.288 seconds.  A level
+ * keeps at most {@link Configuration#getResolutionBuckets()} buckets, so
+ * its buckets get wider than its resolution on a very long test.
+ * 
+ * The stores of the data files are merged into the finest level only; the
+ * coarser levels are then built bottom-up, each from the one below it.
+ * The levels have no whole test histograms; those are in the graph store.
+ */
+public class BucketPyramid {
+
+    private final BucketStore[] levels; // finest first
+    private boolean built = true;
+
+    public BucketPyramid(int[] testNumbers, Configuration config) {
+        SortedSet<Integer> shifts = getShifts(config);
+        TransactionOrdinals ordinals = new TransactionOrdinals(testNumbers);
+        LatencyHistogram bucketHistogram = config.isShowPercentiles() && config.getHistogramBucketDigits() > 0
+                ? new LatencyHistogram(config.getHistogramBucketDigits()) : null;
+        levels = new BucketStore[shifts.size()];
+        int level = 0;
+        for (int shift : shifts) {
+            levels[level++] = new BucketStore(ordinals, config.getResolutionBuckets(), shift,
+                    config.isShowTransactionData(), null, bucketHistogram, null);
+        }
+    }
+
+    private static SortedSet<Integer> getShifts(Configuration config) {
+        SortedSet<Integer> shifts = new TreeSet<Integer>();
+        for (double seconds : config.getResolutions()) {
+            shifts.add(Math.max(0, (int) Math.round(Math.log(seconds * 1000) / Math.log(2))));
+        }
+        return shifts;
+    }
+
+    /**
+     * @return the bucket width of the finest resolution as a power of two
+     *         ms, 0 if there are no resolutions.  Stores of data files need
+     *         no finer buckets.
+     */
+    public static int getFinestShift(Configuration config) {
+        SortedSet<Integer> shifts = getShifts(config);
+        return shifts.isEmpty() ? 0 : shifts.first();
+    }
+
+    /**
+     * Adds the counters of a store, usually the store of a data file, to
+     * the finest level.
+     */
+    public synchronized void merge(BucketStore store) {
+        if (levels.length > 0) {
+            levels[0].merge(store);
+            built = false;
+        }
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * @param level
+     *            0 for the finest
+     */
+    public synchronized BucketStore getLevel(int level) {
+        build();
+        return levels[level];
+    }
+
+    /**
+     * @return the latest start time of a line
+     */
+    public synchronized long getEndTime() {
+        return levels.length == 0 ? 0 : levels[0].getEndTime();
+    }
+
+    /**
+     * Picks the finest level with at most maxBuckets buckets from fromTime
+     * to toTime, or the coarsest level if none has that few.
+     * 
+     * @return the buckets of the level that overlap the time range
+     */
+    public synchronized BucketStore getStore(long fromTime, long toTime, int maxBuckets) {
+        build();
+        BucketStore finest = levels[0];
+        long from = Math.max(fromTime, finest.getStartTime());
+        long to = Math.min(toTime, finest.getEndTime());
+        for (BucketStore level : levels) {
+            long ms = level.getMsPerBucket();
+            if (to / ms - from / ms + 1 <= maxBuckets) {
+                return level.slice(from, to);
+            }
+        }
+        return levels[levels.length - 1].slice(from, to);
+    }
+
+    private void build() {
+        if (built) {
+            return;
+        }
+        for (int level = 1; level < levels.length; level++) {
+            levels[level] = (BucketStore) levels[level].newPartial();
+            levels[level].merge(levels[level - 1]);
+        }
+        built = true;
+    }
+}
@@ -0,0 +1,1088 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-bucket, per-transaction counters for the graphs, stored as dense
+ * columns.
+ * 
+ * Every column is a flat array indexed by [bucket][transaction ordinal]
+ * (see {@link TransactionOrdinals}), so adding a data line is a handful of
+ * array increments.  Time-series for the graphs are read out a transaction
+ * at a time.  Times are in ms, as in the data_ files; series are returned
+ * in seconds.
+ * 
+ * The time span of the test is learned while the lines are added, so no
+ * separate pass over the data files is needed to find it.  Buckets are a
+ * power of two ms wide and aligned on multiples of their width.  A line's
+ * bucket is computed directly from its start time, so lines may be added in
+ * any order.  When the lines seen so far no longer fit in the maximum number
+ * of buckets, the bucket width is doubled and neighbouring buckets are
+ * combined.  The graphs therefore get between half the maximum and the
+ * maximum number of buckets.  A store may also be given a minimum bucket
+ * width, for a fixed resolution (see {@link BucketPyramid}).  The columns
+ * only grow to the maximum number of buckets as the lines need them.
+ * 
+ * The response times of passed tests are also counted in
+ * {@link LatencyHistogram}s: one per transaction for the whole test, for the
+ * percentiles, and optionally one per transaction in every bucket, for the
+ * percentile graphs.  When response time groups are configured, each
+ * passed test is also counted in its group, found by a binary search over
+ * the group limits.
+ * 
+ * Stores built with different transactions, bucket widths or numbers of
+ * buckets can be merged, so a store can be saved (see
+ * {@link BucketStoreCache}) and later merged into one with other settings.
+ */
+public class BucketStore implements LogAggregate {
+
+    /**
+     * The columns kept for every bucket and transaction.  Totals are kept
+     * for all columns and maxima for the timing columns.
+     */
+    public enum Column {
+        PASSED(false),
+        FAILED(false),
+        BYTES(false),
+        RESPONSE_ERRORS(false),
+        RESPONSE_TIME(true),
+        RESOLVE_TIME(true),
+        CONNECT_TIME(true),
+        FIRST_BYTE_TIME(true);
+
+        private final boolean timing;
+
+        private Column(boolean timing) {
+            this.timing = timing;
+        }
+
+        public boolean isTiming() {
+            return timing;
+        }
+    }
+
+    private static final int PASSED = Column.PASSED.ordinal();
+    private static final int FAILED = Column.FAILED.ordinal();
+    private static final int BYTES = Column.BYTES.ordinal();
+    private static final int RESPONSE_ERRORS = Column.RESPONSE_ERRORS.ordinal();
+    private static final int RESPONSE_TIME = Column.RESPONSE_TIME.ordinal();
+    private static final int RESOLVE_TIME = Column.RESOLVE_TIME.ordinal();
+    private static final int CONNECT_TIME = Column.CONNECT_TIME.ordinal();
+    private static final int FIRST_BYTE_TIME = Column.FIRST_BYTE_TIME.ordinal();
+
+    // buckets the columns start with; they grow up to the capacity
+    private static final int INITIAL_BUCKETS = 256;
+
+    private final TransactionOrdinals ordinals;
+    private final int capacity; // maximum number of buckets
+    private final int minShift; // buckets are at least 1 << minShift ms wide
+    private final boolean perTransaction;
+    private final int width; // cells per bucket
+
+    private final LatencyHistogram histogram; // null when disabled
+    private final long[] latencies;           // [transaction ordinal][histogram]
+    private final LatencyHistogram bucketHistogram; // null when disabled
+    private final long[] groupLimits; // ms, ascending; null when disabled
+    private final long[] groupCounts; // [transaction ordinal][group]
+
+    // the columns have room for allocated buckets, starting with firstKey.
+    // A bucket's key is its start time >> shift.
+    private int allocated;
+    private int shift;
+    private long firstKey = 0;
+    private long lowKey = 0;  // first bucket in use
+    private long highKey = -1; // last bucket in use
+    private long[][] totals;
+    private long[][] maxima;
+    // [bucket][transaction ordinal][histogram]; a bucket's histograms are
+    // only allocated once a test passes in it
+    private int[][] bucketLatencies;
+
+    private long startTime = Long.MAX_VALUE; // earliest line start time
+    private long endTime = Long.MIN_VALUE;   // latest line start time
+
+    // lines that started outside the window are still added, and counted
+    private long windowStart = Long.MIN_VALUE;
+    private long windowEnd = Long.MAX_VALUE;
+    private long linesBeforeWindow = 0;
+    private long linesAfterWindow = 0;
+
+    /**
+     * @param ordinals
+     *            the transactions to keep counters for
+     * @param capacity
+     *            maximum number of buckets
+     * @param perTransaction
+     *            when false only the all transactions counters are kept
+     * @param histogram
+     *            layout of the whole test latency histograms, or null
+     * @param bucketHistogram
+     *            layout of the per bucket latency histograms, or null
+     * @param groupLimits
+     *            limits of the response time groups, see
+     *            {@link Configuration#getRtimeThresholdMs()}, or null
+     */
+    public BucketStore(TransactionOrdinals ordinals, int capacity, boolean perTransaction,
+            LatencyHistogram histogram, LatencyHistogram bucketHistogram, long[] groupLimits) {
+        this(ordinals, capacity, 0, perTransaction, histogram, bucketHistogram, groupLimits);
+    }
+
+    /**
+     * @param ordinals
+     *            the transactions to keep counters for
+     * @param capacity
+     *            maximum number of buckets
+     * @param minShift
+     *            buckets are at least 1 << minShift ms wide
+     * @param perTransaction
+     *            when false only the all transactions counters are kept
+     * @param histogram
+     *            layout of the whole test latency histograms, or null
+     * @param bucketHistogram
+     *            layout of the per bucket latency histograms, or null
+     * @param groupLimits
+     *            limits of the response time groups, see
+     *            {@link Configuration#getRtimeThresholdMs()}, or null
+     */
+    public BucketStore(TransactionOrdinals ordinals, int capacity, int minShift, boolean perTransaction,
+            LatencyHistogram histogram, LatencyHistogram bucketHistogram, long[] groupLimits) {
+        this.ordinals = ordinals;
+        this.capacity = Math.max(2, capacity);
+        this.minShift = minShift;
+        this.shift = minShift;
+        this.allocated = Math.min(this.capacity, INITIAL_BUCKETS);
+        this.perTransaction = perTransaction;
+        this.width = ordinals.size();
+        this.histogram = histogram;
+        this.latencies = histogram == null ? null : new long[width * histogram.getLength()];
+        this.bucketHistogram = bucketHistogram;
+        this.groupLimits = groupLimits;
+        this.groupCounts = groupLimits == null ? null : new long[width * (groupLimits.length + 1)];
+        allocateColumns();
+    }
+
+    /**
+     * Creates a store with the configured number of buckets, transaction
+     * data, histograms and response time groups.
+     */
+    public BucketStore(int[] testNumbers, Configuration config) {
+        this(testNumbers, config, config.getBuckets());
+    }
+
+    /**
+     * Creates a store with the configured transaction data, histograms and
+     * response time groups.
+     */
+    public BucketStore(int[] testNumbers, Configuration config, int capacity) {
+        this(testNumbers, config, capacity, 0);
+    }
+
+    /**
+     * Creates a store with the configured transaction data, histograms and
+     * response time groups, and buckets at least 1 << minShift ms wide.
+     */
+    public BucketStore(int[] testNumbers, Configuration config, int capacity, int minShift) {
+        this(new TransactionOrdinals(testNumbers), capacity, minShift, config.isShowTransactionData(),
+                new LatencyHistogram(config.getHistogramDigits()),
+                config.isShowPercentiles() && config.getHistogramBucketDigits() > 0
+                        ? new LatencyHistogram(config.getHistogramBucketDigits()) : null,
+                config.getRtimeThresholdMs());
+    }
+
+    private void allocateColumns() {
+        Column[] columns = Column.values();
+        totals = new long[columns.length][];
+        maxima = new long[columns.length][];
+        for (Column column : columns) {
+            totals[column.ordinal()] = new long[allocated * width];
+            if (column.isTiming()) {
+                maxima[column.ordinal()] = new long[allocated * width];
+            }
+        }
+        if (bucketHistogram != null) {
+            bucketLatencies = new int[allocated][];
+        }
+    }
+
+    /**
+     * @return the histograms of a bucket, allocated if it has none yet
+     */
+    private int[] getBucketLatencies(int bucket) {
+        int[] counts = bucketLatencies[bucket];
+        if (counts == null) {
+            counts = new int[width * bucketHistogram.getLength()];
+            bucketLatencies[bucket] = counts;
+        }
+        return counts;
+    }
+
+    private boolean isEmpty() {
+        return highKey < lowKey;
+    }
+
+    public LogAggregate newPartial() {
+        BucketStore partial = new BucketStore(ordinals, capacity, minShift, perTransaction, histogram,
+                bucketHistogram, groupLimits);
+        partial.setWindow(windowStart, windowEnd);
+        return partial;
+    }
+
+    /**
+     * Sets the start times of the first and the last line of the data file
+     * being read.  Lines added from now on that started before the first
+     * line or after the last one are counted, see
+     * {@link #getLinesBeforeWindow()} and {@link #getLinesAfterWindow()}.
+     * The lines counted after an earlier window are forgotten: when more of
+     * a file is read its last line is a later one, which the lines read
+     * before have hardly ever started after.
+     */
+    public void setWindow(long fromTime, long toTime) {
+        windowStart = fromTime;
+        windowEnd = toTime;
+        linesAfterWindow = 0;
+    }
+
+    /**
+     * Adds the counters of another store.  The other store may keep other
+     * transactions, or narrower buckets; its histograms and response time
+     * groups must be the same as this store's, but may be left out when this
+     * store has none.
+     */
+    public void merge(LogAggregate partial) {
+        BucketStore other = (BucketStore) partial;
+        if (!isCompatible(histogram, other.histogram) || !isCompatible(bucketHistogram, other.bucketHistogram)) {
+            throw new IllegalArgumentException("Cannot merge stores with different histograms");
+        }
+        if (groupLimits != null && !Arrays.equals(groupLimits, other.groupLimits)) {
+            throw new IllegalArgumentException("Cannot merge stores with different response time groups");
+        }
+        int[] map = getOrdinalMap(other);
+        linesBeforeWindow += other.linesBeforeWindow;
+        linesAfterWindow += other.linesAfterWindow;
+        if (groupCounts != null) {
+            int groups = groupLimits.length + 1;
+            for (int from = 0; from < other.width; from++) {
+                int to = map == null ? from : map[from];
+                if (to != TransactionOrdinals.UNKNOWN) {
+                    for (int group = 0; group < groups; group++) {
+                        groupCounts[to * groups + group] += other.groupCounts[from * groups + group];
+                    }
+                }
+            }
+        }
+        if (latencies != null) {
+            int length = histogram.getLength();
+            for (int from = 0; from < other.width; from++) {
+                int to = map == null ? from : map[from];
+                if (to != TransactionOrdinals.UNKNOWN) {
+                    for (int i = 0; i < length; i++) {
+                        latencies[to * length + i] += other.latencies[from * length + i];
+                    }
+                }
+            }
+        }
+        if (other.isEmpty()) {
+            return;
+        }
+        startTime = Math.min(startTime, other.startTime);
+        endTime = Math.max(endTime, other.endTime);
+        cover(other.lowKey << other.shift, other.highKey << other.shift, other.shift);
+        for (long otherKey = other.lowKey; otherKey <= other.highKey; otherKey++) {
+            long key = otherKey >> (shift - other.shift);
+            addBucket(other.totals, other.maxima, other.bucketLatencies, other.width, map,
+                    (int) (otherKey - other.firstKey), (int) (key - firstKey));
+            use(key);
+        }
+    }
+
+    /**
+     * Copies the buckets that overlap the times from fromTime to toTime into
+     * a new store with the same bucket width.  The whole test histograms,
+     * response time groups and lines outside the window of the copy are left
+     * empty.
+     */
+    public BucketStore slice(long fromTime, long toTime) {
+        BucketStore slice = new BucketStore(ordinals, capacity, shift, perTransaction, histogram, bucketHistogram,
+                groupLimits);
+        long low = Math.max(lowKey, fromTime >> shift);
+        long high = Math.min(highKey, toTime >> shift);
+        if (isEmpty() || low > high) {
+            return slice;
+        }
+        slice.cover(low << shift, high << shift, shift);
+        for (long key = low; key <= high; key++) {
+            slice.addBucket(totals, maxima, bucketLatencies, width, null, (int) (key - firstKey),
+                    (int) (key - slice.firstKey));
+            slice.use(key);
+        }
+        slice.startTime = Math.max(startTime, low << shift);
+        slice.endTime = Math.min(endTime, ((high + 1) << shift) - 1);
+        return slice;
+    }
+
+    private static boolean isCompatible(LatencyHistogram layout, LatencyHistogram otherLayout) {
+        return layout == null
+                || (otherLayout != null && layout.getSignificantDigits() == otherLayout.getSignificantDigits());
+    }
+
+    /**
+     * @return the ordinal in this store of every ordinal of the other store
+     *         (UNKNOWN for transactions not kept here), or null if they are
+     *         the same
+     */
+    private int[] getOrdinalMap(BucketStore other) {
+        // the other store's transaction cells are all zero when it keeps none
+        if ((perTransaction || !other.perTransaction)
+                && (ordinals == other.ordinals || Arrays.equals(ordinals.getTestNumbers(),
+                        other.ordinals.getTestNumbers()))) {
+            return null;
+        }
+        int[] map = new int[other.width];
+        for (int ordinal = 1; ordinal < other.width; ordinal++) {
+            map[ordinal] = perTransaction ? ordinals.getOrdinal(other.ordinals.getTestNumber(ordinal))
+                    : TransactionOrdinals.UNKNOWN;
+        }
+        map[TransactionOrdinals.ALL_TRANSACTIONS] = TransactionOrdinals.ALL_TRANSACTIONS;
+        return map;
+    }
+
+    public void handleRecord(DataLogRecord record) {
+        addRecord(record);
+    }
+
+    /**
+     * Adds a data line to its bucket.
+     * 
+     * @param record
+     */
+    public void addRecord(DataLogRecord record) {
+        long time = record.getStartTime();
+        long key = time >> shift;
+        if (key < firstKey || key - firstKey >= allocated) {
+            cover(time, time, shift);
+            key = time >> shift;
+        }
+        use(key);
+        if (time < startTime) {
+            startTime = time;
+        }
+        if (time > endTime) {
+            endTime = time;
+        }
+        if (time < windowStart) {
+            linesBeforeWindow++;
+        } else if (time > windowEnd) {
+            linesAfterWindow++;
+        }
+        int row = (int) (key - firstKey) * width;
+        add(row, TransactionOrdinals.ALL_TRANSACTIONS, record);
+        if (perTransaction) {
+            int ordinal = ordinals.getOrdinal(record.getTest());
+            if (ordinal > 0) {
+                add(row, ordinal, record);
+            }
+        }
+    }
+
+    private void use(long key) {
+        if (isEmpty()) {
+            lowKey = key;
+            highKey = key;
+        } else if (key < lowKey) {
+            lowKey = key;
+        } else if (key > highKey) {
+            highKey = key;
+        }
+    }
+
+    /**
+     * Makes room for the buckets of the times from low to high, at least
+     * 1 << minShift ms wide, by moving, widening and/or adding buckets.
+     */
+    private void cover(long low, long high, int minShift) {
+        if (!isEmpty()) {
+            low = Math.min(low, lowKey << shift);
+            high = Math.max(high, highKey << shift);
+        }
+        int newShift = Math.max(shift, minShift);
+        while ((high >> newShift) - (low >> newShift) >= capacity) {
+            newShift++;
+        }
+        long newLowKey = low >> newShift;
+        long newHighKey = high >> newShift;
+        if (newShift == shift && newLowKey >= firstKey && newHighKey - firstKey < allocated) {
+            return;
+        }
+        int needed = (int) (newHighKey - newLowKey + 1);
+        int newAllocated = allocated;
+        while (newAllocated < needed) {
+            newAllocated = (int) Math.min(capacity, 2L * newAllocated);
+        }
+        long newFirstKey = newLowKey;
+        if (!isEmpty() && newLowKey < lowKey >> (newShift - shift)) {
+            // growing to the left: leave room on both sides, for lines
+            // that started before the first line seen so far
+            newFirstKey -= (newAllocated - needed) / 2;
+        }
+        rebuild(newShift, newFirstKey, newAllocated);
+    }
+
+    /**
+     * Moves the buckets in use to new columns with room for newAllocated
+     * buckets that start at newFirstKey, combining them if newShift is
+     * larger.
+     */
+    private void rebuild(int newShift, long newFirstKey, int newAllocated) {
+        long[][] oldTotals = totals;
+        long[][] oldMaxima = maxima;
+        int[][] oldBucketLatencies = bucketLatencies;
+        allocated = newAllocated;
+        allocateColumns();
+        if (!isEmpty()) {
+            int d = newShift - shift;
+            for (long key = lowKey; key <= highKey; key++) {
+                addBucket(oldTotals, oldMaxima, oldBucketLatencies, width, null, (int) (key - firstKey),
+                        (int) ((key >> d) - newFirstKey));
+            }
+            lowKey >>= d;
+            highKey >>= d;
+        }
+        shift = newShift;
+        firstKey = newFirstKey;
+    }
+
+    /**
+     * Adds a bucket of another set of columns, fromWidth cells wide, to one
+     * of this store's buckets.  map translates the other columns' ordinals,
+     * see {@link #getOrdinalMap(BucketStore)}.
+     */
+    private void addBucket(long[][] fromTotals, long[][] fromMaxima, int[][] fromBucketLatencies, int fromWidth,
+            int[] map, int fromBucket, int toBucket) {
+        if (map == null) {
+            addCell(fromTotals, fromMaxima, fromBucketLatencies, width, fromBucket * width, toBucket * width, width);
+        } else {
+            for (int from = 0; from < fromWidth; from++) {
+                if (map[from] != TransactionOrdinals.UNKNOWN) {
+                    addCell(fromTotals, fromMaxima, fromBucketLatencies, fromWidth, fromBucket * fromWidth + from,
+                            toBucket * width + map[from], 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds count consecutive cells of another set of columns to this
+     * store's cells.
+     */
+    private void addCell(long[][] fromTotals, long[][] fromMaxima, int[][] fromBucketLatencies, int fromWidth,
+            int fromCell, int toCell, int count) {
+        for (int c = 0; c < totals.length; c++) {
+            long[] column = totals[c];
+            long[] fromColumn = fromTotals[c];
+            for (int i = 0; i < count; i++) {
+                column[toCell + i] += fromColumn[fromCell + i];
+            }
+            if (maxima[c] != null) {
+                column = maxima[c];
+                fromColumn = fromMaxima[c];
+                for (int i = 0; i < count; i++) {
+                    column[toCell + i] = Math.max(column[toCell + i], fromColumn[fromCell + i]);
+                }
+            }
+        }
+        if (bucketLatencies == null) {
+            return;
+        }
+        // the cells are in one bucket of either columns
+        int[] fromCounts = fromBucketLatencies[fromCell / fromWidth];
+        if (fromCounts == null) {
+            return;
+        }
+        int[] toCounts = getBucketLatencies(toCell / width);
+        int length = bucketHistogram.getLength();
+        int fromOffset = fromCell % fromWidth * length;
+        int toOffset = toCell % width * length;
+        for (int i = 0; i < count * length; i++) {
+            toCounts[toOffset + i] += fromCounts[fromOffset + i];
+        }
+    }
+
+    private void add(int row, int ordinal, DataLogRecord record) {
+        long[][] totals = this.totals;
+        long[][] maxima = this.maxima;
+        int cell = row + ordinal;
+        if (record.isPassed()) {
+            totals[PASSED][cell]++;
+            if (histogram != null) {
+                histogram.record(latencies, ordinal * histogram.getLength(), record.getTestTime());
+            }
+            if (bucketHistogram != null) {
+                bucketHistogram.record(getBucketLatencies(row / width), ordinal * bucketHistogram.getLength(),
+                        record.getTestTime());
+            }
+            if (groupLimits != null) {
+                groupCounts[ordinal * (groupLimits.length + 1) + getGroup(record.getTestTime())]++;
+            }
+        } else {
+            totals[FAILED][cell]++;
+        }
+        totals[BYTES][cell] += record.getResponseLength();
+        totals[RESPONSE_ERRORS][cell] += record.getResponseErrors();
+        addTime(totals[RESPONSE_TIME], maxima[RESPONSE_TIME], cell, record.getTestTime());
+        addTime(totals[RESOLVE_TIME], maxima[RESOLVE_TIME], cell, record.getResolveHostTime());
+        addTime(totals[CONNECT_TIME], maxima[CONNECT_TIME], cell, record.getConnectTime());
+        addTime(totals[FIRST_BYTE_TIME], maxima[FIRST_BYTE_TIME], cell, record.getFirstByteTime());
+    }
+
+    /**
+     * @return the index of the first group limit larger than the time, the
+     *         number of limits if there is none
+     */
+    private int getGroup(long time) {
+        int low = 0;
+        int high = groupLimits.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (groupLimits[middle] > time) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static void addTime(long[] total, long[] max, int cell, long time) {
+        total[cell] += time;
+        if (time > max[cell]) {
+            max[cell] = time;
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the buckets are at least 1 << minShift ms wide
+     */
+    public int getMinShift() {
+        return minShift;
+    }
+
+    public boolean isPerTransaction() {
+        return perTransaction;
+    }
+
+    /**
+     * @return the significant digits of the whole test histograms, 0 if
+     *         there are none
+     */
+    public int getHistogramDigits() {
+        return histogram == null ? 0 : histogram.getSignificantDigits();
+    }
+
+    /**
+     * @return the significant digits of the per bucket histograms, 0 if
+     *         there are none
+     */
+    public int getBucketHistogramDigits() {
+        return bucketHistogram == null ? 0 : bucketHistogram.getSignificantDigits();
+    }
+
+    public TransactionOrdinals getOrdinals() {
+        return ordinals;
+    }
+
+    /**
+     * @return the number of buckets from the first to the last one in use
+     */
+    public int getBucketCount() {
+        return isEmpty() ? 0 : (int) (highKey - lowKey + 1);
+    }
+
+    public long getMsPerBucket() {
+        return 1L << shift;
+    }
+
+    /**
+     * @return the earliest start time of a line, ms since the epoch (or the
+     *         elapsed time for Grinder 3.0 logs)
+     */
+    public long getStartTime() {
+        return isEmpty() ? 0 : startTime;
+    }
+
+    /**
+     * @return the latest start time of a line
+     */
+    public long getEndTime() {
+        return isEmpty() ? 0 : endTime;
+    }
+
+    /**
+     * @return the number of lines that started before the first line of
+     *         their data file, see {@link #setWindow(long, long)}
+     */
+    public long getLinesBeforeWindow() {
+        return linesBeforeWindow;
+    }
+
+    /**
+     * @return the number of lines that started after the last line of their
+     *         data file
+     */
+    public long getLinesAfterWindow() {
+        return linesAfterWindow;
+    }
+
+    /**
+     * @return the start time of the first bucket
+     */
+    public long getFirstBucketTime() {
+        return lowKey << shift;
+    }
+
+    // index of a cell in the columns; bucket 0 is the first bucket in use
+    private int getCell(int bucket, int ordinal) {
+        return (int) (lowKey - firstKey + bucket) * width + ordinal;
+    }
+
+    public long getTotal(Column column, int bucket, int ordinal) {
+        return totals[column.ordinal()][getCell(bucket, ordinal)];
+    }
+
+    /**
+     * @return the total of a column over all buckets
+     */
+    public long getTestTotal(Column column, int ordinal) {
+        long total = 0;
+        for (int bucket = 0; bucket < getBucketCount(); bucket++) {
+            total += getTotal(column, bucket, ordinal);
+        }
+        return total;
+    }
+
+    /**
+     * @return the per-bucket max; only kept for timing columns
+     */
+    public long getMax(Column column, int bucket, int ordinal) {
+        return maxima[column.ordinal()][getCell(bucket, ordinal)];
+    }
+
+    /**
+     * @return the start of every bucket in seconds since the start of the
+     *         first bucket
+     */
+    public double[] getBucketStartTimes() {
+        int bucketCount = getBucketCount();
+        long msPerBucket = getMsPerBucket();
+        double[] series = new double[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            series[bucket] = bucket * msPerBucket / 1000.0;
+        }
+        return series;
+    }
+
+    /**
+     * @return transactions per second that passed
+     */
+    public double[] getTxSecPassed(int ordinal) {
+        return getRate(totals[PASSED], ordinal, 1.0);
+    }
+
+    /**
+     * @return transactions per second that failed
+     */
+    public double[] getTxSecFailed(int ordinal) {
+        return getRate(totals[FAILED], ordinal, 1.0);
+    }
+
+    /**
+     * @return the average throughput in KB/sec
+     */
+    public double[] getThroughputKBSec(int ordinal) {
+        return getRate(totals[BYTES], ordinal, 1024.0);
+    }
+
+    /**
+     * @return the average total response time for transactions that passed,
+     *         in seconds
+     */
+    public double[] getMeanResponseTime(int ordinal) {
+        return getMeanDifference(totals[RESPONSE_TIME], null, ordinal);
+    }
+
+    /**
+     * @return the maximum response time, in seconds
+     */
+    public double[] getMaxResponseTime(int ordinal) {
+        int bucketCount = getBucketCount();
+        double[] series = new double[bucketCount];
+        long[] max = maxima[RESPONSE_TIME];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            series[bucket] = max[getCell(bucket, ordinal)] / 1000.0;
+        }
+        return series;
+    }
+
+    /**
+     * @return the average time to resolve the host name, in seconds
+     */
+    public double[] getMeanResolveHostTime(int ordinal) {
+        return getMeanDifference(totals[RESOLVE_TIME], null, ordinal);
+    }
+
+    /**
+     * @return the average time between host name resolution and connection
+     *         establishment, in seconds
+     */
+    public double[] getMeanConnectTime(int ordinal) {
+        return getMeanDifference(totals[CONNECT_TIME], totals[RESOLVE_TIME], ordinal);
+    }
+
+    /**
+     * @return the average time between connection establishment and receipt
+     *         of the first response byte, in seconds
+     */
+    public double[] getMeanFirstByteTime(int ordinal) {
+        return getMeanDifference(totals[FIRST_BYTE_TIME], totals[CONNECT_TIME], ordinal);
+    }
+
+    /**
+     * @return the average time between receiving the first byte and the
+     *         completion of the request, in seconds
+     */
+    public double[] getMeanFinishTime(int ordinal) {
+        return getMeanDifference(totals[RESPONSE_TIME], totals[FIRST_BYTE_TIME], ordinal);
+    }
+
+    public boolean hasPercentiles() {
+        return histogram != null;
+    }
+
+    /**
+     * @return true if the passed tests are counted in response time groups
+     */
+    public boolean hasResponseTimeGroups() {
+        return groupLimits != null;
+    }
+
+    /**
+     * @return the limits of the response time groups in ms, see
+     *         {@link Configuration#getRtimeThresholdMs()}, or null
+     */
+    public long[] getResponseTimeGroupLimits() {
+        return groupLimits == null ? null : groupLimits.clone();
+    }
+
+    /**
+     * Counts of the passed tests of a transaction in the response time
+     * groups.  A test is in the first group whose limit is larger than its
+     * response time; the last group takes the remaining tests.
+     * 
+     * @return the number of passed tests in each group
+     */
+    public long[] getResponseTimeGroups(int ordinal) {
+        int groups = groupLimits.length + 1;
+        long[] counts = new long[groups];
+        System.arraycopy(groupCounts, ordinal * groups, counts, 0, groups);
+        return counts;
+    }
+
+    public boolean hasPercentilesOverTime() {
+        return bucketHistogram != null;
+    }
+
+    /**
+     * @param percentile
+     *            0 to 100
+     * @return the response time of passed tests at the percentile over the
+     *         whole test, in ms
+     */
+    public long getPercentileResponseTime(int ordinal, double percentile) {
+        return histogram.getValueAtPercentile(latencies, ordinal * histogram.getLength(), percentile);
+    }
+
+    /**
+     * @return the mean response time of passed tests over the whole test, in
+     *         ms
+     */
+    public double getResponseTimeMean(int ordinal) {
+        return histogram.getMean(latencies, ordinal * histogram.getLength());
+    }
+
+    /**
+     * @return the standard deviation of the response times of passed tests
+     *         over the whole test, in ms
+     */
+    public double getResponseTimeStandardDeviation(int ordinal) {
+        return histogram.getStandardDeviation(latencies, ordinal * histogram.getLength());
+    }
+
+    /**
+     * @param percentile
+     *            0 to 100
+     * @return the response time of passed tests at the percentile in every
+     *         bucket, in seconds
+     */
+    public double[] getPercentileResponseTimes(int ordinal, double percentile) {
+        int bucketCount = getBucketCount();
+        double[] series = new double[bucketCount];
+        int length = bucketHistogram.getLength();
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            int[] counts = bucketLatencies[getCell(bucket, 0) / width];
+            if (counts != null) {
+                series[bucket] = bucketHistogram.getValueAtPercentile(counts, ordinal * length, percentile) / 1000.0;
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Adds the response times of the passed tests of a transaction in a
+     * bucket to a histogram.  Each count of the bucket histogram goes to the
+     * range of the layout holding its lowest value, so the layout should
+     * not keep more digits than histogram_bucket_digits.
+     * 
+     * @param layout
+     *            the layout of counts
+     * @param counts
+     *            a histogram of the layout, see {@link LatencyHistogram}
+     */
+    public void addBucketLatencies(int bucket, int ordinal, LatencyHistogram layout, long[] counts) {
+        int[] bucketCounts = bucketLatencies[getCell(bucket, 0) / width];
+        if (bucketCounts == null) {
+            return;
+        }
+        int length = bucketHistogram.getLength();
+        int offset = ordinal * length;
+        for (int i = 0; i < length; i++) {
+            int count = bucketCounts[offset + i];
+            if (count != 0) {
+                counts[layout.getIndex(bucketHistogram.getLowestValueAt(i))] += count;
+            }
+        }
+    }
+
+    private double[] getRate(long[] column, int ordinal, double divisor) {
+        int bucketCount = getBucketCount();
+        double[] series = new double[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            series[bucket] = column[getCell(bucket, ordinal)] / (divisor * getBucketSeconds(bucket));
+        }
+        return series;
+    }
+
+    /**
+     * @return the part of a bucket from the first to the last line start
+     *         time, in seconds; only the first and the last bucket can be
+     *         partly outside the test
+     */
+    private double getBucketSeconds(int bucket) {
+        long from = (lowKey + bucket) << shift;
+        long to = from + getMsPerBucket();
+        return Math.max(1, Math.min(to, endTime + 1) - Math.max(from, startTime)) / 1000.0;
+    }
+
+    /**
+     * (total - subtracted) / passed, in seconds
+     */
+    private double[] getMeanDifference(long[] total, long[] subtracted, int ordinal) {
+        int bucketCount = getBucketCount();
+        double[] series = new double[bucketCount];
+        long[] passed = totals[PASSED];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            int cell = getCell(bucket, ordinal);
+            if (passed[cell] != 0) {
+                long time = subtracted == null ? total[cell] : total[cell] - subtracted[cell];
+                series[bucket] = time / (1000.0 * passed[cell]);
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Writes the store; only the buckets in use are written.  Counters are
+     * written as variable length numbers, so mostly empty histograms take
+     * little room.
+     */
+    void write(DataOutput out) throws IOException {
+        int[] testNumbers = ordinals.getTestNumbers();
+        out.writeInt(testNumbers.length);
+        for (int testNumber : testNumbers) {
+            out.writeInt(testNumber);
+        }
+        out.writeInt(capacity);
+        out.writeInt(minShift);
+        out.writeBoolean(perTransaction);
+        out.writeInt(getHistogramDigits());
+        out.writeInt(getBucketHistogramDigits());
+        out.writeInt(groupLimits == null ? -1 : groupLimits.length);
+        if (groupLimits != null) {
+            writeCounts(out, groupLimits, 0, groupLimits.length);
+        }
+        out.writeInt(shift);
+        out.writeLong(lowKey);
+        out.writeLong(highKey);
+        out.writeLong(startTime);
+        out.writeLong(endTime);
+        int from = getCell(0, 0);
+        int to = from + getBucketCount() * width;
+        for (int c = 0; c < totals.length; c++) {
+            writeCounts(out, totals[c], from, to);
+            if (maxima[c] != null) {
+                writeCounts(out, maxima[c], from, to);
+            }
+        }
+        if (bucketLatencies != null) {
+            int length = width * bucketHistogram.getLength();
+            for (int bucket = from / width; bucket < to / width; bucket++) {
+                int[] counts = bucketLatencies[bucket];
+                for (int i = 0; i < length; i++) {
+                    writeCount(out, counts == null ? 0 : counts[i]);
+                }
+            }
+        }
+        if (latencies != null) {
+            writeCounts(out, latencies, 0, latencies.length);
+        }
+        if (groupCounts != null) {
+            writeCounts(out, groupCounts, 0, groupCounts.length);
+        }
+        writeCount(out, linesBeforeWindow);
+        writeCount(out, linesAfterWindow);
+    }
+
+    /**
+     * Reads a store written by {@link #write(DataOutput)}.
+     */
+    static BucketStore read(DataInput in) throws IOException {
+        int[] testNumbers = new int[in.readInt()];
+        for (int i = 0; i < testNumbers.length; i++) {
+            testNumbers[i] = in.readInt();
+        }
+        int capacity = in.readInt();
+        int minShift = in.readInt();
+        boolean perTransaction = in.readBoolean();
+        int histogramDigits = in.readInt();
+        int bucketHistogramDigits = in.readInt();
+        int groupLimitCount = in.readInt();
+        long[] groupLimits = null;
+        if (groupLimitCount < -1 || groupLimitCount > 0xFFFF) {
+            throw new IOException("Corrupt bucket store");
+        }
+        if (groupLimitCount >= 0) {
+            groupLimits = new long[groupLimitCount];
+            readCounts(in, groupLimits, 0, groupLimitCount);
+        }
+        BucketStore store = new BucketStore(new TransactionOrdinals(testNumbers), capacity, minShift, perTransaction,
+                histogramDigits == 0 ? null : new LatencyHistogram(histogramDigits),
+                bucketHistogramDigits == 0 ? null : new LatencyHistogram(bucketHistogramDigits), groupLimits);
+        store.shift = in.readInt();
+        store.lowKey = in.readLong();
+        store.highKey = in.readLong();
+        store.firstKey = store.lowKey;
+        store.startTime = in.readLong();
+        store.endTime = in.readLong();
+        if (store.getBucketCount() > store.capacity || store.shift < minShift || store.shift > 62) {
+            throw new IOException("Corrupt bucket store");
+        }
+        if (store.getBucketCount() > store.allocated) {
+            store.allocated = store.getBucketCount();
+            store.allocateColumns();
+        }
+        int to = store.getBucketCount() * store.width;
+        for (int c = 0; c < store.totals.length; c++) {
+            readCounts(in, store.totals[c], 0, to);
+            if (store.maxima[c] != null) {
+                readCounts(in, store.maxima[c], 0, to);
+            }
+        }
+        if (store.bucketLatencies != null) {
+            int length = store.width * store.bucketHistogram.getLength();
+            int[] counts = new int[length];
+            for (int bucket = 0; bucket < store.getBucketCount(); bucket++) {
+                boolean used = false;
+                for (int i = 0; i < length; i++) {
+                    counts[i] = (int) readCount(in);
+                    used |= counts[i] != 0;
+                }
+                if (used) {
+                    store.bucketLatencies[bucket] = counts;
+                    counts = new int[length];
+                }
+            }
+        }
+        if (store.latencies != null) {
+            readCounts(in, store.latencies, 0, store.latencies.length);
+        }
+        if (store.groupCounts != null) {
+            readCounts(in, store.groupCounts, 0, store.groupCounts.length);
+        }
+        store.linesBeforeWindow = readCount(in);
+        store.linesAfterWindow = readCount(in);
+        return store;
+    }
+
+    private static void writeCounts(DataOutput out, long[] counts, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            writeCount(out, counts[i]);
+        }
+    }
+
+    private static void readCounts(DataInput in, long[] counts, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            counts[i] = readCount(in);
+        }
+    }
+
+    /**
+     * Writes a number in 7 bit groups, zig-zag encoded so small negative
+     * numbers stay short too.
+     */
+    private static void writeCount(DataOutput out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readCount(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Corrupt counter");
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the analysis of every data_ file in a cache file next to it, so that
+ * a report can be rebuilt with other settings without reading the data_
+ * files again.
+ * 
+ * A cache is a gzipped {@link BucketStore} for a single data_ file, with
+ * {@link Configuration#getCacheSlices()} fine time slices and the latency
+ * histograms.  It is keyed by the path, size and modification time of the
+ * data_ file and the parser version, and is only used if it holds what the
+ * current settings need: at least as many slices as buckets (and as the
+ * buckets of a resolution, see {@link BucketPyramid}), the
+ * transaction data if it is shown, histograms of the same precision and
+ * the same response time groups.  The buckets, percentiles and report
+ * columns are all derived from the cached store, so changing those
+ * settings needs no parsing.  Stale or unusable caches are replaced.
+ * 
+ * A cache may also cover only the first part of a data_ file that is still
+ * being written; {@link LogFollower} keeps its state this way and resumes
+ * from it.  When an uncompressed data_ file has grown since its cache was
+ * made, only the lines after the cached part are parsed.
+ */
+public class BucketStoreCache {
+
+    public static final String SUFFIX = ".gacache";
+
+    private static final int MAGIC = 0x47414331; // "GAC1"
+    private static final int FORMAT_VERSION = 5;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CHECKSUM_BYTES = 4096;
+
+    private final Configuration config;
+    private final DataLogIngester ingester;
+    private static final Logger logger = Logger.getLogger(BucketStoreCache.class);
+
+    public BucketStoreCache(Configuration config) {
+        this.config = config;
+        this.ingester = new DataLogIngester(config);
+    }
+
+    /**
+     * Builds the bucket store for the data files, from their caches where
+     * possible.  Files without a usable cache are parsed one after the
+     * other, each by all ingest threads, and cached.  The lines that
+     * started before the first or after the last line of their file are
+     * counted, see {@link BucketStore#setWindow(long, long)}.
+     * 
+     * @param dataFiles
+     * @param testNumbers
+     *            the transactions to keep counters for
+     * @throws IOException
+     */
+    public BucketStore load(String[] dataFiles, int[] testNumbers) throws IOException {
+        return load(dataFiles, testNumbers, null);
+    }
+
+    /**
+     * Builds the bucket store for the data files like
+     * {@link #load(String[], int[])}, and also a store for each data file,
+     * with the configured number of buckets.  Every file is still read once,
+     * and only the buckets of each file are kept, so the memory needed grows
+     * with the number of files but not with their length.
+     * 
+     * @param fileStores
+     *            receives the store of every data file, or null
+     */
+    public BucketStore load(String[] dataFiles, int[] testNumbers, BucketStore[] fileStores) throws IOException {
+        BucketStore store = new BucketStore(testNumbers, config);
+        if (!config.isUseCache()) {
+            for (int i = 0; i < dataFiles.length; i++) {
+                BucketStore fileStore = new BucketStore(testNumbers, config);
+                ingest(dataFiles[i], fileStore);
+                store.merge(fileStore);
+                if (fileStores != null) {
+                    fileStores[i] = fileStore;
+                }
+            }
+            return store;
+        }
+        for (int i = 0; i < dataFiles.length; i++) {
+            String dataFile = dataFiles[i];
+            File file = new File(dataFile);
+            long lastModified = file.lastModified();
+            long length = file.length();
+            Checkpoint checkpoint = read(dataFile);
+            BucketStore fileStore;
+            if (checkpoint != null && checkpoint.length == length && checkpoint.lastModified == lastModified) {
+                logger.info("    Analyzing " + dataFile + " (cached)");
+                fileStore = checkpoint.store;
+            } else {
+                fileStore = newFileStore(testNumbers, config);
+                if (checkpoint != null && checkpoint.isPrefixOf(dataFile)
+                        && endsWithLine(dataFile, checkpoint.length)) {
+                    // only the lines written since the cache was made are parsed
+                    fileStore.merge(checkpoint.store);
+                    setWindow(dataFile, fileStore);
+                    ingester.ingest(dataFile, checkpoint.length, fileStore);
+                } else {
+                    if (checkpoint != null) {
+                        logger.info("    Cache of " + dataFile + " is stale");
+                    }
+                    ingest(dataFile, fileStore);
+                }
+                write(dataFile, fileStore, length, lastModified);
+            }
+            store.merge(fileStore);
+            if (fileStores != null) {
+                fileStores[i] = new BucketStore(testNumbers, config);
+                fileStores[i].merge(fileStore);
+            }
+        }
+        return store;
+    }
+
+    private void ingest(String dataFile, BucketStore fileStore) throws IOException {
+        setWindow(dataFile, fileStore);
+        ingester.ingest(new String[] { dataFile }, fileStore);
+    }
+
+    private static void setWindow(String dataFile, BucketStore fileStore) throws IOException {
+        long[] window = DataLogParser.readStartTimeRange(dataFile);
+        if (window != null) {
+            fileStore.setWindow(window[0], window[1]);
+        }
+    }
+
+    /**
+     * @return true if the byte before length ends a line, so the rest of the
+     *         file can be parsed from length on
+     */
+    private static boolean endsWithLine(String dataFile, long length) throws IOException {
+        if (length == 0) {
+            return true;
+        }
+        RandomAccessFile input = new RandomAccessFile(dataFile, "r");
+        try {
+            input.seek(length - 1);
+            return input.read() == '\n';
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return an empty store for a single data file, with the time slices
+     *         of a cache
+     */
+    static BucketStore newFileStore(int[] testNumbers, Configuration config) {
+        return new BucketStore(testNumbers, config, config.getCacheSlices(), BucketPyramid.getFinestShift(config));
+    }
+
+    /**
+     * @return the cache file of a data file
+     */
+    public static File getCacheFile(String dataFile) {
+        return new File(dataFile + SUFFIX);
+    }
+
+    /**
+     * @return the cached store of the data file and the part of the file it
+     *         covers, or null if there is no cache or it is unusable with the
+     *         current settings
+     */
+    Checkpoint read(String dataFile) {
+        File cacheFile = getCacheFile(dataFile);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                    new FileInputStream(cacheFile), BUFFER_SIZE)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                        || in.readInt() != DataLogParser.VERSION
+                        || !in.readUTF().equals(new File(dataFile).getCanonicalPath())) {
+                    logger.info("    Cache of " + dataFile + " is stale");
+                    return null;
+                }
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                long checksum = in.readLong();
+                BucketStore store = BucketStore.read(in);
+                if (!isUsable(store)) {
+                    logger.info("    Cache of " + dataFile + " does not match the current settings");
+                    return null;
+                }
+                return new Checkpoint(store, length, lastModified, checksum);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            logger.warn("    Could not read " + cacheFile + ": " + e);
+            return null;
+        }
+    }
+
+    private boolean isUsable(BucketStore store) {
+        int bucketDigits = config.isShowPercentiles() ? config.getHistogramBucketDigits() : 0;
+        long[] groupLimits = config.getRtimeThresholdMs();
+        int slices = config.getResolutions().length == 0 ? config.getBuckets()
+                : Math.max(config.getBuckets(), config.getResolutionBuckets());
+        return store.getCapacity() >= slices && store.getMinShift() <= BucketPyramid.getFinestShift(config)
+                && (store.isPerTransaction() || !config.isShowTransactionData())
+                && store.getHistogramDigits() == config.getHistogramDigits()
+                && (bucketDigits == 0 || store.getBucketHistogramDigits() == bucketDigits)
+                && (groupLimits == null || Arrays.equals(groupLimits, store.getResponseTimeGroupLimits()));
+    }
+
+    /**
+     * Writes the cache of a data file.  A cache that cannot be written is
+     * only logged; it is tried again on the next run.
+     * 
+     * @param length
+     *            the number of bytes of the data file covered by the store
+     * @param lastModified
+     *            the modification time of the data file, taken before its
+     *            length
+     */
+    void write(String dataFile, BucketStore store, long length, long lastModified) {
+        File cacheFile = getCacheFile(dataFile);
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            long checksum = getChecksum(dataFile, length);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                    new FileOutputStream(tempFile), BUFFER_SIZE)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(DataLogParser.VERSION);
+                out.writeUTF(new File(dataFile).getCanonicalPath());
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeLong(checksum);
+                store.write(out);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                if (!tempFile.renameTo(cacheFile)) {
+                    throw new IOException("Could not rename " + tempFile);
+                }
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            logger.warn("    Could not write " + cacheFile + ": " + e);
+        }
+    }
+
+    /**
+     * @return a checksum of the last few KB before length, to recognize the
+     *         file a partial cache was made of; 0 for compressed files
+     */
+    static long getChecksum(String dataFile, long length) throws IOException {
+        if (LogFiles.isCompressed(dataFile)) {
+            return 0;
+        }
+        int size = (int) Math.min(length, CHECKSUM_BYTES);
+        byte[] bytes = new byte[size];
+        RandomAccessFile input = new RandomAccessFile(dataFile, "r");
+        try {
+            input.seek(length - size);
+            input.readFully(bytes);
+        } finally {
+            input.close();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    /**
+     * A cached store, and the part of the data file it was made of.
+     */
+    static class Checkpoint {
+        final BucketStore store;
+        final long length;
+        final long lastModified;
+        final long checksum;
+
+        Checkpoint(BucketStore store, long length, long lastModified, long checksum) {
+            this.store = store;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return true if the data file still starts with the part the store
+         *         was made of, as far as can be told cheaply
+         */
+        boolean isPrefixOf(String dataFile) throws IOException {
+            File file = new File(dataFile);
+            if (LogFiles.isCompressed(dataFile)) {
+                return length == file.length() && lastModified == file.lastModified();
+            }
+            return length <= file.length() && checksum == getChecksum(dataFile, length);
+        }
+    }
+}
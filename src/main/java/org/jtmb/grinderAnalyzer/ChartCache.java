@@ -0,0 +1,192 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.CombinedDomainXYPlot;
+import org.jfree.chart.plot.Plot;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.chart.title.Title;
+import org.jfree.data.xy.XYDataset;
+import org.jfree.data.xy.XYZDataset;
+
+/**
+ * A directory of chart .png files, named by a hash of what the charts show,
+ * so that unchanged charts are not drawn again when a report is rebuilt.
+ * 
+ * The key of a chart covers its kind (the grapher), its size, its title
+ * and text subtitles, the weights of combined plots and every value of its
+ * datasets.  Colors, fonts and axis settings are not part of it; they are
+ * set by the graphers, so KEY_VERSION must change when a grapher draws
+ * differently.  Cached files are hard-linked into the report, or copied
+ * where links are not possible.
+ */
+public class ChartCache {
+
+    private static final String KEY_VERSION = "1";
+    private static final String SUFFIX = ".png";
+
+    private final File dir;
+
+    /**
+     * @param dir
+     *            the cache directory, created when needed
+     */
+    public ChartCache(String dir) {
+        this.dir = new File(dir);
+    }
+
+    /**
+     * Reads the chart on the calling thread; the key does not change when
+     * the chart is changed afterwards.
+     * 
+     * @param chart
+     * @param width
+     * @param height
+     * @param kind
+     *            distinguishes charts drawn differently from the same data
+     * @return the key of the chart, a hex string
+     */
+    public String getKey(JFreeChart chart, int width, int height, String kind) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(KEY_VERSION);
+            out.writeUTF(kind);
+            out.writeInt(width);
+            out.writeInt(height);
+            TextTitle title = chart.getTitle();
+            out.writeUTF(title == null ? "" : title.getText());
+            for (int i = 0; i < chart.getSubtitleCount(); i++) {
+                Title subtitle = chart.getSubtitle(i);
+                if (subtitle instanceof TextTitle) {
+                    out.writeUTF(((TextTitle) subtitle).getText());
+                }
+            }
+            writePlot(out, chart.getPlot());
+            out.close();
+            return toHex(MessageDigest.getInstance("SHA-1").digest(bytes.toByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writePlot(DataOutputStream out, Plot plot) throws IOException {
+        out.writeUTF(plot.getClass().getName());
+        if (plot instanceof CombinedDomainXYPlot) {
+            List<?> subplots = ((CombinedDomainXYPlot) plot).getSubplots();
+            out.writeInt(subplots.size());
+            for (Object subplot : subplots) {
+                out.writeInt(((XYPlot) subplot).getWeight());
+                writePlot(out, (XYPlot) subplot);
+            }
+        } else if (plot instanceof XYPlot) {
+            XYPlot xyPlot = (XYPlot) plot;
+            out.writeInt(xyPlot.getDatasetCount());
+            for (int i = 0; i < xyPlot.getDatasetCount(); i++) {
+                writeDataset(out, xyPlot.getDataset(i));
+            }
+        }
+    }
+
+    private static void writeDataset(DataOutputStream out, XYDataset dataset) throws IOException {
+        if (dataset == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(dataset.getSeriesCount());
+        for (int series = 0; series < dataset.getSeriesCount(); series++) {
+            out.writeUTF(String.valueOf(dataset.getSeriesKey(series)));
+            int items = dataset.getItemCount(series);
+            out.writeInt(items);
+            for (int item = 0; item < items; item++) {
+                out.writeDouble(dataset.getXValue(series, item));
+                out.writeDouble(dataset.getYValue(series, item));
+                if (dataset instanceof XYZDataset) {
+                    out.writeDouble(((XYZDataset) dataset).getZValue(series, item));
+                }
+            }
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Puts the cached chart of a key at the target.
+     * 
+     * @return false if there is no chart of the key
+     * @throws IOException
+     */
+    public boolean restore(String key, File target) throws IOException {
+        File cached = new File(dir, key + SUFFIX);
+        if (!cached.isFile()) {
+            return false;
+        }
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), cached.toPath());
+        } catch (IOException e) {
+            // another file system, or no hard links
+            Files.copy(cached.toPath(), target.toPath());
+        } catch (UnsupportedOperationException e) {
+            Files.copy(cached.toPath(), target.toPath());
+        }
+        return true;
+    }
+
+    /**
+     * Keeps a copy of a chart under its key.  The copy is renamed into
+     * place, so other runs never see a partial file.
+     * 
+     * @throws IOException
+     */
+    public void store(String key, File chart) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create chart cache " + dir);
+        }
+        File temp = File.createTempFile(key, ".tmp", dir);
+        try {
+            Files.copy(chart.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), new File(dir, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
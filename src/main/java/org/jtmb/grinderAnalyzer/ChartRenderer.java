@@ -0,0 +1,182 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+
+/**
+ * Draws charts and writes them as .png files on a fixed pool of threads.
+ * 
+ * A chart must be complete when it is submitted: neither it nor its datasets
+ * may be changed until {@link #finish()} returns, as it is drawn on another
+ * thread.  Charts that share nothing are drawn in parallel; the files are
+ * the same as those written one after another.  At most two charts per
+ * thread are queued; submit() waits for a free place, so charts that are
+ * written can be collected while later ones are still being built.  With
+ * a {@link ChartCache}, charts of a known key are taken from the cache
+ * instead of drawn.
+ */
+public class ChartRenderer {
+
+    static {
+        // charts are drawn off screen; without this AWT may look for a display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+    }
+
+    private final ExecutorService pool;
+    private final List<Future<File>> pending = new ArrayList<Future<File>>();
+    private final Semaphore queued;
+    private final ChartCache cache;
+    private final AtomicInteger cached = new AtomicInteger();
+    private static final Logger logger = Logger.getLogger(ChartRenderer.class);
+
+    /**
+     * @param threads
+     *            size of the thread pool
+     * @param cache
+     *            the cache of drawn charts, or null
+     */
+    public ChartRenderer(int threads, ChartCache cache) {
+        this.cache = cache;
+        threads = Math.max(1, threads);
+        queued = new Semaphore(2 * threads);
+        final AtomicInteger count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "chart-renderer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public ChartRenderer(Configuration config) {
+        this(config.getRenderThreads(), config.isChartCache() ? new ChartCache(config.getChartCache()) : null);
+    }
+
+    /**
+     * Queues a chart to be written as a .png file.
+     * 
+     * @param chart
+     * @param fileName
+     * @param width
+     * @param height
+     */
+    public void submit(JFreeChart chart, String fileName, int width, int height) {
+        submit(chart, fileName, width, height, "");
+    }
+
+    /**
+     * Queues a chart to be written as a .png file, from the cache when it
+     * has a chart of the same key.
+     * 
+     * @param chart
+     * @param fileName
+     * @param width
+     * @param height
+     * @param kind
+     *            the kind of chart, see {@link ChartCache#getKey}
+     */
+    public void submit(final JFreeChart chart, String fileName, final int width, final int height, String kind) {
+        final File file = new File(fileName);
+        final String key = cache == null ? null : cache.getKey(chart, width, height, kind);
+        queued.acquireUninterruptibly();
+        pending.add(pool.submit(new Callable<File>() {
+            public File call() throws IOException {
+                try {
+                    if (key != null && cache.restore(key, file)) {
+                        cached.incrementAndGet();
+                        return file;
+                    }
+                    ChartUtilities.saveChartAsPNG(file, chart, width, height);
+                    if (key != null) {
+                        cache.store(key, file);
+                    }
+                    return file;
+                } finally {
+                    queued.release();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Waits for every submitted chart and stops the threads.  The renderer
+     * cannot be used afterwards.
+     * 
+     * @throws IOException
+     *             if a chart could not be written; the other charts are
+     *             still written
+     */
+    public void finish() throws IOException {
+        IOException failure = null;
+        int charts = pending.size();
+        try {
+            for (Future<File> chart : pending) {
+                try {
+                    logger.debug("wrote " + chart.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = toIOException(e.getCause());
+                    } else {
+                        logger.error("Couldn't write chart", e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing charts", e);
+        } finally {
+            pending.clear();
+            pool.shutdownNow();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (cache != null) {
+            logger.info("    " + cached.getAndSet(0) + " of " + charts + " charts taken from the chart cache");
+        }
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException("Couldn't write chart", cause);
+    }
+}
@@ -23,6 +23,11 @@
 
 package org.jtmb.grinderAnalyzer;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public class Columns {
     // all these these values to appear as column names in the
     // generated .html report
@@ -35,6 +40,8 @@ public class Columns {
     public static final String RTIME = "Mean Response Time";
     public static final String RTIME_STD_DEV = "Response time standard dev.";
     public static final String TPS = "Tx/Sec";
+    // response time percentile columns are named this plus the percentile
+    public static final String RTIME_PERCENTILE = "Response Time ";
     
     //http tests
     public static final String RESPONSE_LEN = "Mean Response Length";
@@ -43,4 +50,69 @@ public class Columns {
     public static final String RESOLVE_HOST = "Mean Time Resolve Host";
     public static final String CONNECT = "Mean Time Establish Connection";
     public static final String FIRST_BYTE = "Mean Time to First Byte"; 
+
+    /**
+     * @param percentile
+     *            0 to 100
+     * @return the short name of a percentile, for example "p99.9"
+     */
+    public static String getPercentileLabel(double percentile) {
+        if (percentile == Math.rint(percentile)) {
+            return "p" + (long) percentile;
+        }
+        return "p" + percentile;
+    }
+
+    /**
+     * @param percentile
+     *            0 to 100
+     * @return the name of the response time column for a percentile, for
+     *         example "Response Time p99.9"
+     */
+    public static String getPercentileColumn(double percentile) {
+        return RTIME_PERCENTILE + getPercentileLabel(percentile);
+    }
+
+    // every column that was ever given a value gets a dense index, so report
+    // rows can keep their values in an array
+    private static final Map<String, Integer> indices = new HashMap<String, Integer>();
+    private static final List<String> names = new ArrayList<String>();
+    private static final List<Boolean> percents = new ArrayList<Boolean>();
+
+    /**
+     * @param columnName
+     * @return the index of the column, registering it if it is new
+     */
+    public static synchronized int getIndex(String columnName) {
+        Integer index = indices.get(columnName);
+        if (index == null) {
+            index = names.size();
+            indices.put(columnName, index);
+            names.add(columnName);
+            // the pass rate and the response time group columns are in
+            // percent format
+            percents.add(columnName.equals(PASS_RATE)
+                    || (columnName.toUpperCase().endsWith(" SEC") && !columnName.equals(BYTES_PERSEC)));
+        }
+        return index;
+    }
+
+    public static synchronized String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * @return true if the values of the column are shown as fractions, with
+     *         three decimals
+     */
+    public static synchronized boolean isPercent(int index) {
+        return percents.get(index);
+    }
+
+    /**
+     * @return the number of registered columns
+     */
+    public static synchronized int size() {
+        return names.size();
+    }
 }
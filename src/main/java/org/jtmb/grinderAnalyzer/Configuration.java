@@ -23,9 +23,14 @@ package org.jtmb.grinderAnalyzer;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import org.apache.log4j.Logger;
 import org.jtmb.velocityMerger.VelocityMerger;
@@ -46,9 +51,32 @@ public class Configuration {
     private int rtChartHeight;
     private int tpsWeight;
     private int responseTimeWeight;
+    private int renderThreads;
+    private boolean clientCharts = false;
+    private String chartCache;
+    private boolean showHeatmap = false;
     private String dateFormat;
     private boolean useThresholds = true;
     private List<Float> rtimeThresholds;
+    private float[] rtimeThresholdSeconds;
+    private long[] rtimeThresholdMs;
+    private NumberFormat inputNumberFormat = null;
+    private int histogramDigits;
+    private int histogramBucketDigits;
+
+    // log analysis settings
+    private int ingestThreads;
+    private int ingestChunkMB;
+    private boolean useCache = false;
+    private int cacheSlices;
+    private boolean follow = false;
+    private int followInterval;
+    private int dashboardPort;
+    private boolean writeSketch = false;
+    private String mergeSketches;
+    private boolean analyzeErrorLogs = false;
+    private int errorClusters;
+    private int errorEntries;
     
     private boolean showTransactionData = true;
 
@@ -59,6 +87,10 @@ public class Configuration {
     private boolean showMeanTime = true;
     private boolean showStandardDev = true;
     private boolean showTPS = false;
+    private boolean showPercentiles = false;
+    private double[] percentiles;
+    private double[] resolutions;
+    private int resolutionBuckets;
 
     // additional enabled columns in HTTP reports
     private boolean showResponseLength = true;
@@ -91,10 +123,29 @@ public class Configuration {
     private static final String DEFAULT_DATE_FORMAT = "'Test executed' MMMM dd yyyy, HH:MM";
     private static final String DEFAULT_RTIME_WEIGHT = "1";
     private static final String DEFAULT_TPS_WEIGHT = "3";
+    private static final String DEFAULT_RENDER_THREADS = "0"; // one per core
     private static final String DEFAULT_TPS_CHART_HEIGHT = "640";
     private static final String DEFAULT_TPS_CHART_WIDTH = "460";
     private static final String DEFAULT_REPORT_DIR = "grinderReport";
     private static final String DEFAULT_OSSTATS_LINK = "..";
+    private static final String DEFAULT_INGEST_THREADS = "0"; // one per core
+    private static final String DEFAULT_INGEST_CHUNK_MB = "64";
+    private static final String DEFAULT_PERCENTILES = "50, 90, 95, 99, 99.9";
+    private static final String DEFAULT_HISTOGRAM_DIGITS = "2";
+    private static final String DEFAULT_HISTOGRAM_BUCKET_DIGITS = "1";
+    private static final String DEFAULT_CACHE_SLICES = "1000";
+    private static final String DEFAULT_RESOLUTIONS = ""; // none
+    private static final String DEFAULT_RESOLUTION_BUCKETS = "100000";
+    private static final String DEFAULT_FOLLOW_INTERVAL = "60";
+    private static final String DEFAULT_DASHBOARD_PORT = "0"; // off
+    private static final String DEFAULT_ERROR_CLUSTERS = "10";
+    private static final String DEFAULT_ERROR_ENTRIES = "3";
+
+    /**
+     * System properties starting with this override the settings of the
+     * config file, e.g. -Danalyzer.follow=true.  Used by the dashboard goal.
+     */
+    public static final String OVERRIDE_PREFIX = "analyzer.";
 
     private static final Logger logger = Logger.getLogger(Configuration.class);
 
@@ -113,6 +164,11 @@ public class Configuration {
             System.err.println("FATAL: error loading config file " + file.getAbsolutePath());
             System.exit(1);
         }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(OVERRIDE_PREFIX)) {
+                props.setProperty(name.substring(OVERRIDE_PREFIX.length()), System.getProperty(name));
+            }
+        }
         loadConfig();
     }
 
@@ -133,6 +189,25 @@ public class Configuration {
         tpsChartHeight = getIntProperty("tps_chart_height", DEFAULT_TPS_CHART_HEIGHT);
         tpsChartWidth = getIntProperty("tps_chart_width", DEFAULT_TPS_CHART_WIDTH);
         tpsWeight = getIntProperty("tps_weight", DEFAULT_TPS_WEIGHT);
+        renderThreads = getIntProperty("render_threads", DEFAULT_RENDER_THREADS);
+        clientCharts = getBoolProperty("client_charts", "false");
+        chartCache = props.getProperty("chart_cache", "").trim();
+        showHeatmap = getBoolProperty("show_heatmap", "false");
+        ingestThreads = getIntProperty("ingest_threads", DEFAULT_INGEST_THREADS);
+        ingestChunkMB = getIntProperty("ingest_chunk_mb", DEFAULT_INGEST_CHUNK_MB);
+        useCache = getBoolProperty("use_cache", "false");
+        cacheSlices = getIntProperty("cache_slices", DEFAULT_CACHE_SLICES);
+        resolutionBuckets = getIntProperty("resolution_buckets", DEFAULT_RESOLUTION_BUCKETS);
+        follow = getBoolProperty("follow", "false");
+        followInterval = getIntProperty("follow_interval", DEFAULT_FOLLOW_INTERVAL);
+        dashboardPort = getIntProperty("dashboard_port", DEFAULT_DASHBOARD_PORT);
+        writeSketch = getBoolProperty("write_sketch", "false");
+        mergeSketches = props.getProperty("merge_sketches", "").trim();
+        analyzeErrorLogs = getBoolProperty("analyze_error_logs", "false");
+        errorClusters = getIntProperty("error_clusters", DEFAULT_ERROR_CLUSTERS);
+        errorEntries = getIntProperty("error_entries", DEFAULT_ERROR_ENTRIES);
+        histogramDigits = getIntProperty("histogram_digits", DEFAULT_HISTOGRAM_DIGITS);
+        histogramBucketDigits = getIntProperty("histogram_bucket_digits", DEFAULT_HISTOGRAM_BUCKET_DIGITS);
 
         showTransactionData = getBoolProperty("show_transaction_data", "true");
         showDate = getBoolProperty("show_date", "false");
@@ -142,6 +217,7 @@ public class Configuration {
         showMeanTime = getBoolProperty("show_mean_time", "false");
         showStandardDev = getBoolProperty("show_standard_dev", "false");
         showTPS = getBoolProperty("show_TPS", "false");
+        showPercentiles = getBoolProperty("show_percentiles", "false");
 
         showResponseLength = getBoolProperty("show_response_length", "false");
         showBytesPerSec = getBoolProperty("show_bytes_per_sec", "false");
@@ -176,6 +252,52 @@ public class Configuration {
             rtimeThresholds.add(MAX_POSSIBLE_TIME);
             Collections.sort(rtimeThresholds);
         }
+        rtimeThresholdSeconds = new float[rtimeThresholds.size()];
+        for (int i = 0; i < rtimeThresholdSeconds.length; i++) {
+            rtimeThresholdSeconds[i] = rtimeThresholds.get(i);
+        }
+        rtimeThresholdMs = new long[Math.max(0, rtimeThresholdSeconds.length - 1)];
+        for (int i = 0; i < rtimeThresholdMs.length; i++) {
+            // the decimal the threshold was written as: 0.1f is a bit over 100 ms
+            BigDecimal ms = new BigDecimal(Float.toString(rtimeThresholdSeconds[i])).movePointRight(3);
+            rtimeThresholdMs[i] = ms.setScale(0, RoundingMode.CEILING).longValue();
+        }
+
+        // get the response time percentiles
+        String[] words = props.getProperty("percentiles", DEFAULT_PERCENTILES).split(",");
+        percentiles = new double[words.length];
+        for (int i = 0; i < words.length; i++) {
+            try {
+                percentiles[i] = Double.parseDouble(words[i].trim());
+            } catch (NumberFormatException nfe) {
+                System.err.println("FATAL: '" + words[i] + "' is an invalid config setting for 'percentiles'.");
+                System.exit(1);
+            }
+        }
+        // get the resolutions of the bucket pyramid
+        String resolutionsProperty = props.getProperty("resolutions", DEFAULT_RESOLUTIONS).trim();
+        words = resolutionsProperty.length() == 0 ? new String[0] : resolutionsProperty.split(",");
+        resolutions = new double[words.length];
+        for (int i = 0; i < words.length; i++) {
+            try {
+                resolutions[i] = Double.parseDouble(words[i].trim());
+            } catch (NumberFormatException nfe) {
+                resolutions[i] = -1;
+            }
+            if (!(resolutions[i] > 0)) {
+                System.err.println("FATAL: '" + words[i] + "' is an invalid config setting for 'resolutions'.");
+                System.exit(1);
+            }
+        }
+        if (histogramDigits < 1 || histogramDigits > 3) {
+            System.err.println("FATAL: '" + histogramDigits + "' is an invalid config setting for 'histogram_digits'.");
+            System.exit(1);
+        }
+        if (histogramBucketDigits < 0 || histogramBucketDigits > 3) {
+            System.err.println("FATAL: '" + histogramBucketDigits
+                    + "' is an invalid config setting for 'histogram_bucket_digits'.");
+            System.exit(1);
+        }
     }
 
     private Float getFloatProperty(String propname, String defaultValue) {
@@ -243,6 +365,48 @@ public class Configuration {
         return tpsWeight;
     }
 
+    /**
+     * @return the number of threads drawing and encoding the report charts
+     */
+    public int getRenderThreads() {
+        if (renderThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return renderThreads;
+    }
+
+    /**
+     * @return true if the graphs are drawn by the report page from the
+     *         series of the report, instead of written as .png files
+     */
+    public boolean isClientCharts() {
+        return clientCharts;
+    }
+
+    /**
+     * @return true if drawn charts are kept in a cache directory, see
+     *         {@link ChartCache}
+     */
+    public boolean isChartCache() {
+        return chartCache.length() > 0;
+    }
+
+    /**
+     * @return the directory of the chart cache
+     */
+    public String getChartCache() {
+        return chartCache;
+    }
+
+    /**
+     * @return true if every transaction gets a response time heatmap graph;
+     *         it needs the bucket histograms, which are only kept with
+     *         show_percentiles and histogram_bucket_digits
+     */
+    public boolean isShowHeatmap() {
+        return showHeatmap && isShowPercentiles() && histogramBucketDigits > 0;
+    }
+
     public int getResponseTimeWeight() {
         return responseTimeWeight;
     }
@@ -263,6 +427,24 @@ public class Configuration {
         return rtimeThresholds.toArray();
     }
 
+    /**
+     * @return the maximum response time of each response time group in
+     *         seconds, ascending; the last is MAX_POSSIBLE_TIME
+     */
+    public float[] getRtimeThresholdSeconds() {
+        return rtimeThresholdSeconds.clone();
+    }
+
+    /**
+     * @return the response time groups to count, as the limits between
+     *         them in whole ms, ascending, or null if they are disabled.  A
+     *         test is in the group before the first limit larger than its
+     *         response time.
+     */
+    public long[] getRtimeThresholdMs() {
+        return useThresholds ? rtimeThresholdMs.clone() : null;
+    }
+
     public boolean isShowTests() {
         return showTests;
     }
@@ -287,6 +469,33 @@ public class Configuration {
         return showTPS;
     }
 
+    public boolean isShowPercentiles() {
+        return showPercentiles;
+    }
+
+    /**
+     * @return the response time percentiles (0 to 100) shown in the report
+     *         and the response time charts
+     */
+    public double[] getPercentiles() {
+        return percentiles.clone();
+    }
+
+    /**
+     * @return significant digits of the per-transaction latency histograms
+     */
+    public int getHistogramDigits() {
+        return histogramDigits;
+    }
+
+    /**
+     * @return significant digits of the per-bucket latency histograms behind
+     *         the percentile charts, 0 when they are disabled
+     */
+    public int getHistogramBucketDigits() {
+        return histogramBucketDigits;
+    }
+
     public boolean isShowResponseLength() {
         return showResponseLength;
     }
@@ -311,6 +520,27 @@ public class Configuration {
         return showFirstByte;
     }
     
+    /**
+     * @return the format of the numbers in the grinder out_ files, of the
+     *         configured locale; shared, so for one thread only
+     */
+    public NumberFormat getInputNumberFormat() {
+        if (inputNumberFormat == null && isNonDefaultLocale()) {
+            // assume that at a minimum, a language has been provided
+            Locale locale = new Locale(getLocaleLanguage());
+            if (! getLocaleCountry().equals("")) {
+                locale = new Locale(getLocaleLanguage(), getLocaleCountry());
+            }
+            if (! getLocaleVariant().equals("")) {
+                locale = new Locale(getLocaleLanguage(), getLocaleCountry(), getLocaleVariant());
+            }
+            inputNumberFormat = NumberFormat.getNumberInstance(locale);
+        } else if (inputNumberFormat == null) {
+            inputNumberFormat = NumberFormat.getNumberInstance(); // default locale
+        }
+        return inputNumberFormat;
+    }
+
     public boolean isNonDefaultLocale() {
         return useNonDefautLocale;
     }
@@ -347,6 +577,143 @@ public class Configuration {
         return OSStatsLink;
     }
 
+    /**
+     * @return the number of threads used to parse data_ files
+     */
+    public int getIngestThreads() {
+        if (ingestThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return ingestThreads;
+    }
+
+    /**
+     * @return the nominal size of the data_ file chunks parsed in parallel
+     */
+    public long getIngestChunkBytes() {
+        return Math.max(1, ingestChunkMB) * 1024L * 1024L;
+    }
+
+    /**
+     * @return true if the analysis of each data_ file is cached next to it
+     */
+    public boolean isUseCache() {
+        return useCache;
+    }
+
+    /**
+     * @return the number of time slices kept in the caches; never less than
+     *         the number of buckets, nor than the buckets of a resolution
+     *         when there are any
+     */
+    public int getCacheSlices() {
+        return Math.max(cacheSlices, resolutions.length == 0 ? buckets : Math.max(buckets, resolutionBuckets));
+    }
+
+    /**
+     * @return the bucket widths of the resolutions kept for zooming, in
+     *         seconds; empty when only the graph buckets are kept
+     */
+    public double[] getResolutions() {
+        return resolutions.clone();
+    }
+
+    /**
+     * @return the maximum number of buckets of a resolution; a longer test
+     *         gets wider buckets
+     */
+    public int getResolutionBuckets() {
+        return Math.max(2, resolutionBuckets);
+    }
+
+    /**
+     * @return true if the data_ files are followed while the test runs,
+     *         with a live report refreshed until the test is over
+     */
+    public boolean isFollow() {
+        return follow;
+    }
+
+    /**
+     * @return seconds between refreshes of the live report
+     */
+    public int getFollowInterval() {
+        return Math.max(1, followInterval);
+    }
+
+    /**
+     * @return the localhost port of the live dashboard served while
+     *         following the test, 0 when there is no dashboard
+     */
+    public int getDashboardPort() {
+        return dashboardPort;
+    }
+
+    /**
+     * @return true if a sketch of the analysis is written next to the report,
+     *         to be merged with those of the other load generators
+     */
+    public boolean isWriteSketch() {
+        return writeSketch;
+    }
+
+    /**
+     * @return true if the error_ logs are read, for a table of the most
+     *         frequent errors in the reports
+     */
+    public boolean isAnalyzeErrorLogs() {
+        return analyzeErrorLogs;
+    }
+
+    /**
+     * @return the number of different errors shown in a report
+     */
+    public int getErrorClusters() {
+        return Math.max(0, errorClusters);
+    }
+
+    /**
+     * @return the number of entries of each error copied from the error_
+     *         logs next to the report
+     */
+    public int getErrorEntries() {
+        return Math.max(0, errorEntries);
+    }
+
+    /**
+     * @return true if sketches are merged into a cluster report instead of
+     *         analyzing logs
+     */
+    public boolean isMergeSketches() {
+        return mergeSketches.length() > 0;
+    }
+
+    /**
+     * @return the sketch files to merge into a cluster report instead of
+     *         analyzing logs; a directory stands for the sketches in it
+     */
+    public String[] getMergeSketches() {
+        List<String> files = new ArrayList<String>();
+        if (mergeSketches.length() == 0) {
+            return new String[0];
+        }
+        for (String name : mergeSketches.split(",")) {
+            File file = new File(name.trim());
+            if (file.isDirectory()) {
+                String[] children = file.list();
+                Arrays.sort(children);
+                for (String child : children) {
+                    if (child.endsWith(SketchFile.SUFFIX)) {
+                        files.add(new File(file, child).getPath());
+                    }
+                }
+            } else {
+                files.add(file.getPath());
+            }
+        }
+        return files.toArray(new String[files.size()]);
+    }
+
     public String toString() {
         StringBuffer sb = new StringBuffer("GRINDER ANALYZER CONFIG" + NEWLINE);
         sb.append(INDENT + "Report directory: " + this.reportDir + NEWLINE);
@@ -371,8 +738,38 @@ public class Configuration {
         sb.append(INDENT + "TPS chart weight: " + this.tpsWeight + NEWLINE);
         sb.append(INDENT + "TPS chart height: " + this.tpsChartHeight + NEWLINE);
         sb.append(INDENT + "TPS chart width: " + this.tpsChartWidth + NEWLINE);
+        sb.append(INDENT + "Chart drawing threads: " + getRenderThreads() + NEWLINE);
+        sb.append(INDENT + "Draw charts in the browser: " + this.clientCharts + NEWLINE);
+        if (isChartCache()) {
+            sb.append(INDENT + "Chart cache: " + this.chartCache + NEWLINE);
+        }
+        sb.append(INDENT + "Show response time heatmaps: " + isShowHeatmap() + NEWLINE);
         
         sb.append(INDENT + "Only show summary data: " + this.showTransactionData + NEWLINE);
+        sb.append(INDENT + "Log analysis threads: " + getIngestThreads() + NEWLINE);
+        sb.append(INDENT + "Log analysis chunk size (MB): " + this.ingestChunkMB + NEWLINE);
+        sb.append(INDENT + "Use log analysis cache: " + this.useCache + NEWLINE);
+        if (this.useCache) {
+            sb.append(INDENT + INDENT + "Cache time slices: " + getCacheSlices() + NEWLINE);
+        }
+        sb.append(INDENT + "Resolutions (seconds): " + props.getProperty("resolutions", DEFAULT_RESOLUTIONS) + NEWLINE);
+        if (resolutions.length > 0) {
+            sb.append(INDENT + INDENT + "Maximum buckets per resolution: " + getResolutionBuckets() + NEWLINE);
+        }
+        sb.append(INDENT + "Follow running test: " + this.follow + NEWLINE);
+        if (this.follow) {
+            sb.append(INDENT + INDENT + "Refresh interval (seconds): " + getFollowInterval() + NEWLINE);
+            sb.append(INDENT + INDENT + "Dashboard port: " + this.dashboardPort + NEWLINE);
+        }
+        sb.append(INDENT + "Write sketch: " + this.writeSketch + NEWLINE);
+        sb.append(INDENT + "Analyze error logs: " + this.analyzeErrorLogs + NEWLINE);
+        if (this.analyzeErrorLogs) {
+            sb.append(INDENT + INDENT + "Errors shown: " + getErrorClusters() + NEWLINE);
+            sb.append(INDENT + INDENT + "Entries copied per error: " + getErrorEntries() + NEWLINE);
+        }
+        if (mergeSketches.length() > 0) {
+            sb.append(INDENT + "Merge sketches: " + this.mergeSketches + NEWLINE);
+        }
 
         sb.append(INDENT + "Show tests passed: " + this.showTests + NEWLINE);
         sb.append(INDENT + "Show tests failed: " + this.showErrors + NEWLINE);
@@ -380,6 +777,12 @@ public class Configuration {
         sb.append(INDENT + "Show mean time to resolve host: " + this.showMeanTime + NEWLINE);
         sb.append(INDENT + "Show test time standard deviation: " + this.showStandardDev + NEWLINE);
         sb.append(INDENT + "Show TPS: " + this.showTPS + NEWLINE);
+        sb.append(INDENT + "Show response time percentiles: " + this.showPercentiles + NEWLINE);
+        if (this.showPercentiles) {
+            sb.append(INDENT + INDENT + "Percentiles: " + props.getProperty("percentiles", DEFAULT_PERCENTILES) + NEWLINE);
+            sb.append(INDENT + INDENT + "Histogram digits: " + this.histogramDigits + NEWLINE);
+            sb.append(INDENT + INDENT + "Histogram digits per bucket: " + this.histogramBucketDigits + NEWLINE);
+        }
 
         sb.append(INDENT + "Show response length: " + this.showResponseLength + NEWLINE);
         sb.append(INDENT + "Show bytes per second: " + this.showBytesPerSec + NEWLINE);
@@ -0,0 +1,282 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP server for watching a test while it runs.  It serves the
+ * dashboard page at / and the series of the latest refresh of the
+ * followed data_ files at /series.json; the page polls the series.
+ * 
+ * The server only listens on the loopback interface and needs no display.
+ * The series of the whole test are turned into JSON once per refresh, so
+ * those requests only copy bytes and never touch a store that is being
+ * updated.  When resolutions are configured, /series.json?last=ms zooms
+ * into the end of the test: the series come from the finest level of the
+ * {@link BucketPyramid} with at most the configured number of buckets in
+ * that time.
+ */
+public class DashboardServer {
+
+    private static final String UTF_8 = "UTF-8";
+
+    private final HttpServer server;
+    private final File page;
+    private final double[] percentiles;
+    private final int buckets;
+    private volatile Snapshot snapshot;
+    private static final Logger logger = Logger.getLogger(DashboardServer.class);
+
+    /**
+     * @param port
+     *            the localhost port, 0 for any free port
+     * @param page
+     *            the dashboard html page
+     * @throws IOException
+     *             if the port cannot be bound
+     */
+    public DashboardServer(int port, String page, Configuration config) throws IOException {
+        this.page = new File(page);
+        this.percentiles = config.getPercentiles();
+        this.buckets = config.getBuckets();
+        this.snapshot = new Snapshot(toBytes("{}"), null, null);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", new PageHandler());
+        server.createContext("/series.json", new SeriesHandler());
+    }
+
+    public void start() {
+        server.start();
+        logger.warn("Live dashboard at http://localhost:" + getPort() + "/");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Publishes the series of a store.  Every transaction gets its passed
+     * tests per second, its error rate (failed over all tests) and its
+     * response times in ms: the configured percentiles when the store keeps
+     * per-bucket histograms, otherwise the mean and the maximum.
+     * 
+     * @param store
+     * @param pyramid
+     *            the same lines at the zoom resolutions, or null
+     * @param names
+     *            the name of every transaction, by ordinal; transactions
+     *            without a name are left out
+     */
+    public void update(BucketStore store, BucketPyramid pyramid, String[] names) {
+        snapshot = new Snapshot(toJson(store, names), pyramid, names.clone());
+    }
+
+    private byte[] toJson(BucketStore store, String[] names) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"updated\":").append(System.currentTimeMillis());
+        json.append(",\"start\":").append(store.getFirstBucketTime());
+        json.append(",\"end\":").append(store.getEndTime());
+        json.append(",\"msPerBucket\":").append(store.getMsPerBucket());
+        json.append(",\"transactions\":[");
+        boolean first = true;
+        for (int ordinal = 0; ordinal < names.length; ordinal++) {
+            if (names[ordinal] == null) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"name\":");
+            appendString(json, names[ordinal]);
+            json.append(",\"tps\":");
+            appendSeries(json, store.getTxSecPassed(ordinal), 1);
+            json.append(",\"errorRate\":");
+            appendSeries(json, getErrorRate(store, ordinal), 1);
+            json.append(",\"latency\":{");
+            if (store.hasPercentilesOverTime()) {
+                for (int i = 0; i < percentiles.length; i++) {
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    appendString(json, Columns.getPercentileLabel(percentiles[i]));
+                    json.append(':');
+                    appendSeries(json, store.getPercentileResponseTimes(ordinal, percentiles[i]), 1000);
+                }
+            } else {
+                json.append("\"mean\":");
+                appendSeries(json, store.getMeanResponseTime(ordinal), 1000);
+                json.append(",\"max\":");
+                appendSeries(json, store.getMaxResponseTime(ordinal), 1000);
+            }
+            json.append("}}");
+        }
+        json.append("]}");
+        return toBytes(json.toString());
+    }
+
+    private static double[] getErrorRate(BucketStore store, int ordinal) {
+        double[] rate = new double[store.getBucketCount()];
+        for (int bucket = 0; bucket < rate.length; bucket++) {
+            long failed = store.getTotal(BucketStore.Column.FAILED, bucket, ordinal);
+            long tests = failed + store.getTotal(BucketStore.Column.PASSED, bucket, ordinal);
+            rate[bucket] = tests == 0 ? 0 : (double) failed / tests;
+        }
+        return rate;
+    }
+
+    private static void appendSeries(StringBuilder json, double[] values, double scale) {
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            double value = values[i] * scale;
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                json.append('0');
+            } else if (value == Math.rint(value)) {
+                json.append((long) value);
+            } else {
+                json.append((float) value);
+            }
+        }
+        json.append(']');
+    }
+
+    static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    static byte[] toBytes(String text) {
+        try {
+            return text.getBytes(UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private class PageHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestURI().getPath().equals("/")) {
+                send(exchange, 404, "text/plain", toBytes("Not found"));
+                return;
+            }
+            byte[] body = new byte[(int) page.length()];
+            InputStream in = new FileInputStream(page);
+            try {
+                int read = 0;
+                while (read < body.length) {
+                    int n = in.read(body, read, body.length - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+            } finally {
+                in.close();
+            }
+            send(exchange, 200, "text/html; charset=utf-8", body);
+        }
+    }
+
+    /**
+     * What the latest refresh published.
+     */
+    private static class Snapshot {
+        final byte[] series;
+        final BucketPyramid pyramid;
+        final String[] names;
+
+        Snapshot(byte[] series, BucketPyramid pyramid, String[] names) {
+            this.series = series;
+            this.pyramid = pyramid;
+            this.names = names;
+        }
+    }
+
+    private class SeriesHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            Snapshot current = snapshot;
+            String query = exchange.getRequestURI().getQuery();
+            if (query == null || !query.startsWith("last=") || current.pyramid == null
+                    || current.pyramid.getLevelCount() == 0) {
+                send(exchange, 200, "application/json", current.series);
+                return;
+            }
+            long last;
+            try {
+                last = Long.parseLong(query.substring("last=".length()));
+            } catch (NumberFormatException e) {
+                send(exchange, 400, "text/plain", toBytes("Bad query: " + query));
+                return;
+            }
+            long end = current.pyramid.getEndTime();
+            send(exchange, 200, "application/json",
+                    toJson(current.pyramid.getStore(end - last, end, buckets), current.names));
+        }
+    }
+}
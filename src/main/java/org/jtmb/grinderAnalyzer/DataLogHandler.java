@@ -0,0 +1,38 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+/**
+ * Receives the lines of a grinder data_ file from a {@link DataLogParser}.
+ * 
+ * Implementations may be written in Jython.
+ */
+public interface DataLogHandler {
+
+    /**
+     * Called once for every data line.  The record is reused by the parser
+     * and is only valid for the duration of the call.
+     * 
+     * @param record
+     */
+    public void handleRecord(DataLogRecord record);
+}
@@ -0,0 +1,265 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.apache.log4j.Logger;
+
+/**
+ * Feeds grinder data_ files to a {@link LogAggregate} using every core.
+ * 
+ * Each file is memory-mapped and split into chunks that end on line
+ * boundaries.  Compressed files (see {@link LogFiles}) cannot be split; each
+ * is a single chunk that is decompressed and parsed as a stream.  Chunks
+ * are parsed on a fork-join pool.  Every worker thread parses its chunks
+ * into its own partial aggregate, and the partials are merged once all
+ * chunks are done.  Lines may therefore reach the aggregate in any order.
+ */
+public class DataLogIngester {
+
+    // the largest region a single MappedByteBuffer can address
+    private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private final int threads;
+    private final long chunkSize;
+    private static final Logger logger = Logger.getLogger(DataLogIngester.class);
+
+    /**
+     * @param threads
+     *            size of the fork-join pool
+     * @param chunkSize
+     *            nominal number of bytes parsed by a single task
+     */
+    public DataLogIngester(int threads, long chunkSize) {
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+    }
+
+    public DataLogIngester(Configuration config) {
+        this(config.getIngestThreads(), config.getIngestChunkBytes());
+    }
+
+    /**
+     * Parses every line of the data files into the aggregate.
+     * 
+     * @param dataFiles
+     * @param aggregate
+     * @throws IOException
+     */
+    public void ingest(String[] dataFiles, LogAggregate aggregate) throws IOException {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (String dataFile : dataFiles) {
+            List<Chunk> fileChunks = split(new File(dataFile));
+            if (LogFiles.isCompressed(dataFile)) {
+                logger.info("    Analyzing " + dataFile + " (compressed, streamed)");
+            } else {
+                logger.info("    Analyzing " + dataFile + " (" + fileChunks.size() + " chunks)");
+            }
+            chunks.addAll(fileChunks);
+        }
+        ingest(chunks, aggregate);
+    }
+
+    /**
+     * Parses the lines of an uncompressed data file from an offset on, such
+     * as the lines appended since a cache was made of the file.
+     * 
+     * @param dataFile
+     * @param offset
+     *            the start of a line
+     * @param aggregate
+     * @throws IOException
+     */
+    public void ingest(String dataFile, long offset, LogAggregate aggregate) throws IOException {
+        List<Chunk> chunks = split(new File(dataFile), offset);
+        logger.info("    Analyzing " + dataFile + " from byte " + offset + " (" + chunks.size() + " chunks)");
+        ingest(chunks, aggregate);
+    }
+
+    private void ingest(List<Chunk> chunks, LogAggregate aggregate) throws IOException {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        final LogAggregate prototype = aggregate;
+        final ConcurrentLinkedQueue<LogAggregate> partials = new ConcurrentLinkedQueue<LogAggregate>();
+        ThreadLocal<LogAggregate> threadPartial = new ThreadLocal<LogAggregate>() {
+            protected LogAggregate initialValue() {
+                LogAggregate partial = prototype.newPartial();
+                partials.add(partial);
+                return partial;
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new ChunkTask(chunks, 0, chunks.size(), threadPartial));
+        } catch (ChunkException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        for (LogAggregate partial : partials) {
+            aggregate.merge(partial);
+        }
+    }
+
+    /**
+     * Splits a file into chunks of roughly chunkSize bytes, each ending just
+     * after a line terminator (or at the end of the file).
+     */
+    List<Chunk> split(File file) throws IOException {
+        return split(file, 0);
+    }
+
+    /**
+     * Splits a file like {@link #split(File)}, from an offset on.
+     */
+    List<Chunk> split(File file, long offset) throws IOException {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        if (LogFiles.isCompressed(file.getName())) {
+            chunks.add(new Chunk(file, 0, -1));
+            return chunks;
+        }
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            ByteBuffer scan = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            long start = offset;
+            while (start < size) {
+                long end = Math.min(start + chunkSize, size);
+                if (end < size) {
+                    end = nextLineStart(channel, end - 1, size, scan);
+                    if (end - start > MAX_CHUNK_SIZE) {
+                        throw new IOException("Line too long at offset " + start + " in " + file);
+                    }
+                }
+                chunks.add(new Chunk(file, start, end));
+                start = end;
+            }
+        } finally {
+            input.close();
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the offset just past the first '\n' at or after position, or
+     *         size if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer scan)
+            throws IOException {
+        while (position < size) {
+            scan.clear();
+            int read = channel.read(scan, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    static class Chunk {
+        final File file;
+        final long start;
+        final long end; // -1 for the whole of a compressed file
+
+        Chunk(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        void parse(LogAggregate partial) throws IOException {
+            if (end < 0) {
+                new DataLogParser().parseFile(file.getPath(), partial);
+                return;
+            }
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                new DataLogParser().parse(buffer, partial);
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<LogAggregate> threadPartial;
+
+        ChunkTask(List<Chunk> chunks, int from, int to, ThreadLocal<LogAggregate> threadPartial) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.threadPartial = threadPartial;
+        }
+
+        protected void compute() {
+            if (to - from == 1) {
+                // a chunk is parsed without forking, so no other chunk can
+                // use this thread's partial until it is done
+                try {
+                    chunks.get(from).parse(threadPartial.get());
+                } catch (IOException e) {
+                    throw new ChunkException(e);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(chunks, from, middle, threadPartial), new ChunkTask(chunks, middle, to,
+                    threadPartial));
+        }
+    }
+
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(IOException cause) {
+            super(cause);
+        }
+
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
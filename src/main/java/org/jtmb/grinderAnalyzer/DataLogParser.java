@@ -0,0 +1,290 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import org.apache.log4j.Logger;
+
+/**
+ * Reads grinder data_ files.
+ * 
+ * Lines are decoded straight from bytes into a single reusable
+ * {@link DataLogRecord}, so no Strings or lists are created per line.  The
+ * header line, blank lines, and lines that do not carry numeric values in
+ * the mandatory columns (thread through errors) are skipped.  Extra columns
+ * (custom statistics) are tolerated and ignored.
+ */
+public class DataLogParser {
+
+    // data_ file format info
+    public static final int THREAD_COLUMN = 0;
+    public static final int RUN_COLUMN = 1;
+    public static final int TEST_NUMBER_COLUMN = 2;      // which test is this data for
+    public static final int START_TIME_COLUMN = 3;       // ms since the epoch (Grinder 3.1+)
+    public static final int TEST_TIME_COLUMN = 4;        // no. of ms for server to respond
+    public static final int ERRORS_COLUMN = 5;           // did the transaction succeed?
+    public static final int RESPONSE_CODE_COLUMN = 6;
+    public static final int RESPONSE_LENGTH_COLUMN = 7;  // if success, how many bytes in body?
+    public static final int RESPONSE_ERRORS_COLUMN = 8;
+    public static final int RESOLVE_HOST_COLUMN = 9;
+    public static final int CONNECT_COLUMN = 10;
+    public static final int FIRST_BYTE_COLUMN = 11;
+    public static final int NEW_CONNECTIONS_COLUMN = 12;
+
+    /**
+     * Changes whenever the records decoded from a data_ file change, so the
+     * cached analyses of the files (see {@link BucketStoreCache}) are redone.
+     */
+    public static final int VERSION = 1;
+
+    private static final int REQUIRED_COLUMNS = ERRORS_COLUMN + 1;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    // lines kept from the end of a compressed file to find its last data line
+    private static final int LAST_LINES = 16;
+
+    private final DataLogRecord record = new DataLogRecord();
+    private long lines = 0;
+    private long skippedLines = 0;
+    private static final Logger logger = Logger.getLogger(DataLogParser.class);
+
+    /**
+     * Parses every line of a data_ file.  The file may be compressed, see
+     * {@link LogFiles}.
+     * 
+     * @param fileName
+     * @param handler
+     * @throws IOException
+     */
+    public void parseFile(String fileName, DataLogHandler handler) throws IOException {
+        InputStream input = LogFiles.open(fileName);
+        try {
+            ReadableByteChannel channel = input instanceof FileInputStream ? ((FileInputStream) input).getChannel()
+                    : Channels.newChannel(input);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (true) {
+                int read = channel.read(buffer);
+                buffer.flip();
+                parse(buffer, handler, read < 0);
+                if (read < 0) {
+                    break;
+                }
+                if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                    // a single line does not fit in the buffer
+                    ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    larger.put(buffer);
+                    buffer = larger;
+                } else {
+                    buffer.compact();
+                }
+            }
+        } finally {
+            input.close();
+        }
+        logger.debug("Parsed " + lines + " lines of " + fileName + ", skipped " + skippedLines);
+    }
+
+    /**
+     * Parses all lines in the buffer, from its position up to its limit.
+     * 
+     * @param buffer
+     * @param handler
+     */
+    public void parse(ByteBuffer buffer, DataLogHandler handler) {
+        parse(buffer, handler, true);
+    }
+
+    /**
+     * Parses the lines in the buffer, from its position up to its limit.
+     * 
+     * @param buffer
+     * @param handler
+     * @param endOfInput
+     *            when false, a trailing line with no line terminator is left
+     *            unread, with the buffer positioned at its first byte.
+     */
+    public void parse(ByteBuffer buffer, DataLogHandler handler, boolean endOfInput) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (position < limit) {
+            int next = parseLine(buffer, position, limit, handler, endOfInput);
+            if (next < 0) {
+                break;
+            }
+            position = next;
+        }
+        buffer.position(position);
+    }
+
+    /**
+     * @return the position just past the line, or -1 if the line is
+     *         incomplete and endOfInput is false.
+     */
+    private int parseLine(ByteBuffer buffer, int start, int limit, DataLogHandler handler, boolean endOfInput) {
+        DataLogRecord record = this.record;
+        record.clear();
+        int column = 0;
+        long value = 0;
+        boolean negative = false;
+        boolean digits = false;
+        boolean fieldValid = true;
+        boolean lineValid = true;
+        boolean blank = true;
+        int position = start;
+        for (; position < limit; position++) {
+            byte b = buffer.get(position);
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits = true;
+                blank = false;
+            } else if (b == ',' || b == '\n') {
+                if (fieldValid && digits) {
+                    record.setColumn(column, negative ? -value : value);
+                } else if (column < REQUIRED_COLUMNS) {
+                    lineValid = false;
+                }
+                if (b == '\n') {
+                    break;
+                }
+                column++;
+                value = 0;
+                negative = false;
+                digits = false;
+                fieldValid = true;
+            } else if (b == ' ' || b == '\t' || b == '\r') {
+                continue;
+            } else if (b == '-' && !digits) {
+                negative = true;
+            } else {
+                fieldValid = false;
+                blank = false;
+            }
+        }
+        if (position == limit) {
+            if (!endOfInput) {
+                return -1;
+            }
+            // final line with no line terminator
+            if (fieldValid && digits) {
+                record.setColumn(column, negative ? -value : value);
+            } else if (column < REQUIRED_COLUMNS) {
+                lineValid = false;
+            }
+        } else {
+            position++; // consume the line terminator
+        }
+        if (blank) {
+            return position;
+        }
+        if (lineValid && column >= REQUIRED_COLUMNS - 1) {
+            lines++;
+            handler.handleRecord(record);
+        } else {
+            skippedLines++;
+        }
+        return position;
+    }
+
+    /**
+     * Reads only the first and the last data line of a data_ file.  Grinder
+     * writes a line when its test ends, so lines of tests that ran long may
+     * have started before the first line or after the last one.  A
+     * compressed file has to be read to its end to find the last line.
+     * 
+     * @param fileName
+     * @return the start times of the first and the last data line, or null
+     *         if the file has no data lines
+     * @throws IOException
+     */
+    public static long[] readStartTimeRange(String fileName) throws IOException {
+        DataLogParser parser = new DataLogParser();
+        StartTimes first = new StartTimes();
+        LogFiles.LineReader reader = new LogFiles.LineReader(LogFiles.open(fileName));
+        try {
+            String line;
+            while (!first.found && (line = reader.readLine()) != null) {
+                parser.parseLine(line, first);
+            }
+        } finally {
+            reader.close();
+        }
+        if (!first.found) {
+            return null;
+        }
+        StartTimes last = new StartTimes();
+        if (LogFiles.isCompressed(fileName)) {
+            String[] lines = LogFiles.readLastLines(fileName, LAST_LINES);
+            for (int i = lines.length - 1; i >= 0 && !last.found; i--) {
+                parser.parseLine(lines[i], last);
+            }
+        } else {
+            ReverseLineReader lines = new ReverseLineReader(fileName);
+            try {
+                String line;
+                while (!last.found && (line = lines.readLine()) != null) {
+                    parser.parseLine(line, last);
+                }
+            } finally {
+                lines.close();
+            }
+        }
+        return new long[] { first.startTime, last.startTime };
+    }
+
+    private void parseLine(String line, DataLogHandler handler) throws IOException {
+        parse(ByteBuffer.wrap(line.getBytes("ISO-8859-1")), handler);
+    }
+
+    /**
+     * Keeps the start time of the first line it is handed.
+     */
+    private static class StartTimes implements DataLogHandler {
+        boolean found = false;
+        long startTime;
+
+        public void handleRecord(DataLogRecord record) {
+            if (!found) {
+                startTime = record.getStartTime();
+                found = true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of data lines handed to handlers
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the number of non-blank lines that were not data lines
+     *         (normally only the header)
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+/**
+ * A single line of a grinder data_ file, held as primitive fields.
+ * 
+ * Instances are owned by a {@link DataLogParser} and are overwritten for
+ * every line it reads, so handlers must copy out anything they want to
+ * keep beyond the call to {@link DataLogHandler#handleRecord(DataLogRecord)}.
+ */
+public class DataLogRecord {
+
+    private int columns;
+    private int thread;
+    private long run;
+    private int test;
+    private long startTime;
+    private long testTime;
+    private long errors;
+    private int httpResponseCode;
+    private long responseLength;
+    private long responseErrors;
+    private long resolveHostTime;
+    private long connectTime;
+    private long firstByteTime;
+    private long newConnections;
+
+    void clear() {
+        columns = 0;
+        thread = 0;
+        run = 0;
+        test = 0;
+        startTime = 0;
+        testTime = 0;
+        errors = 0;
+        httpResponseCode = 0;
+        responseLength = 0;
+        responseErrors = 0;
+        resolveHostTime = 0;
+        connectTime = 0;
+        firstByteTime = 0;
+        newConnections = 0;
+    }
+
+    void setColumn(int column, long value) {
+        switch (column) {
+        case DataLogParser.THREAD_COLUMN:
+            thread = (int) value;
+            break;
+        case DataLogParser.RUN_COLUMN:
+            run = value;
+            break;
+        case DataLogParser.TEST_NUMBER_COLUMN:
+            test = (int) value;
+            break;
+        case DataLogParser.START_TIME_COLUMN:
+            startTime = value;
+            break;
+        case DataLogParser.TEST_TIME_COLUMN:
+            testTime = value;
+            break;
+        case DataLogParser.ERRORS_COLUMN:
+            errors = value;
+            break;
+        case DataLogParser.RESPONSE_CODE_COLUMN:
+            httpResponseCode = (int) value;
+            break;
+        case DataLogParser.RESPONSE_LENGTH_COLUMN:
+            responseLength = value;
+            break;
+        case DataLogParser.RESPONSE_ERRORS_COLUMN:
+            responseErrors = value;
+            break;
+        case DataLogParser.RESOLVE_HOST_COLUMN:
+            resolveHostTime = value;
+            break;
+        case DataLogParser.CONNECT_COLUMN:
+            connectTime = value;
+            break;
+        case DataLogParser.FIRST_BYTE_COLUMN:
+            firstByteTime = value;
+            break;
+        case DataLogParser.NEW_CONNECTIONS_COLUMN:
+            newConnections = value;
+            break;
+        default:
+            // custom statistics columns are not used by the analyzer
+        }
+        columns = column + 1;
+    }
+
+    /**
+     * @return the number of columns read from the line
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return true if the line carried the HTTP timing columns
+     */
+    public boolean isHTTP() {
+        return columns > DataLogParser.FIRST_BYTE_COLUMN;
+    }
+
+    public boolean isPassed() {
+        return errors == 0;
+    }
+
+    public int getThread() {
+        return thread;
+    }
+
+    public long getRun() {
+        return run;
+    }
+
+    public int getTest() {
+        return test;
+    }
+
+    /**
+     * @return the start time of the test, ms since the epoch (Grinder 3.1+)
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the test time in ms
+     */
+    public long getTestTime() {
+        return testTime;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public int getHttpResponseCode() {
+        return httpResponseCode;
+    }
+
+    public long getResponseLength() {
+        return responseLength;
+    }
+
+    public long getResponseErrors() {
+        return responseErrors;
+    }
+
+    public long getResolveHostTime() {
+        return resolveHostTime;
+    }
+
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    public long getFirstByteTime() {
+        return firstByteTime;
+    }
+
+    public long getNewConnections() {
+        return newConnections;
+    }
+
+    public String toString() {
+        return "thread " + thread + ", run " + run + ", test " + test + ", start " + startTime
+                + ", time " + testTime + ", errors " + errors;
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.log4j.Logger;
+
+/**
+ * Groups the entries of grinder error_ logs by what went wrong.  The logs
+ * are read once, a line at a time; an entry is a header line with the time,
+ * thread, run and test, and the lines of its stack trace.  Entries with the
+ * same signature, the exception class and its message with the numbers,
+ * ids and hex strings left out, form a cluster.  Beyond MAX_CLUSTERS
+ * signatures, new ones go to a single cluster of other errors.  Of each
+ * cluster only the counts per test and
+ * per second are kept, with the times of the first and last entry and the
+ * offsets of a few entries, which are copied next to the report by
+ * {@link #writeEntries(String, List, long, long, int)}.
+ */
+public class ErrorLogIndex {
+
+    // 2012-02-22 14:42:00,113 ERROR host-0 thread-3 [ run-0, test-2 ]: Aborted run: ...
+    private static final Pattern HEADER = Pattern.compile(
+            "^(\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d[,.]\\d{3})\\s.*?thread-(\\d+)"
+            + "(?:\\s*\\[\\s*run-(\\d+)(?:,\\s*test-(\\d+))?\\s*\\])?:\\s?(.*)$");
+    // 2/22/12 2:42:00 PM (thread 3 run 0 test 2): Aborted run due to ...
+    private static final Pattern LEGACY_HEADER = Pattern.compile(
+            "^(.+?) \\((?:process \\S+ )?thread (\\d+)(?: run (\\d+))?(?: test (\\d+))?\\):\\s?(.*)$");
+    private static final Pattern EXCEPTION = Pattern.compile(
+            "((?:[a-zA-Z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error|Throwable))(?:'>)?(?::\\s*(.*))?");
+    // hashes and UUIDs, then any word with a digit: 42, 0x1f, host12, id_7a
+    private static final Pattern NUMBER = Pattern.compile(
+            "(?<![\\w-])[0-9a-fA-F][0-9a-fA-F-]{6,}[0-9a-fA-F](?![\\w-])|\\w*\\d\\w*");
+    private static final Pattern SPACE = Pattern.compile("\\s+");
+
+    public static final int NO_TEST = -1;
+    private static final int MAX_SIGNATURE_LENGTH = 200;
+    private static final int MAX_CLUSTERS = 1000;
+    public static final String OTHER_ERRORS = "(other errors)";
+    private static final int MAX_ENTRY_LINES = 200; // searched for the exception
+    private static final int MAX_ENTRY_BYTES = 64 * 1024; // copied per entry
+    private static final String ENTRIES_DIR = "errors";
+
+    private final Map<String, Cluster> clusters = new HashMap<String, Cluster>();
+    private final Map<Integer, String> testNames = new HashMap<Integer, String>();
+    // by the separator of the ms, e.g. ',' in 14:42:00,113
+    private final Map<Character, DateFormat> headerFormats = new HashMap<Character, DateFormat>();
+    private final int maxEntries;
+    private long errorCount = 0;
+    private static final Logger logger = Logger.getLogger(ErrorLogIndex.class);
+
+    /**
+     * The entries of the error logs with one signature.
+     */
+    public class Cluster {
+        private final String signature;
+        private long count = 0;
+        private final Map<Integer, Long> testCounts = new TreeMap<Integer, Long>();
+        private final TreeMap<Long, Long> secondCounts = new TreeMap<Long, Long>();
+        private long firstTime = Long.MAX_VALUE;
+        private long lastTime = Long.MIN_VALUE;
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private String entriesFile = "";
+
+        Cluster(String signature) {
+            this.signature = signature;
+        }
+
+        void add(int testNumber, long time, Entry entry) {
+            count++;
+            addCount(testCounts, testNumber, 1);
+            if (time >= 0) {
+                addCount(secondCounts, time / 1000, 1);
+                firstTime = Math.min(firstTime, time);
+                lastTime = Math.max(lastTime, time);
+            }
+            if (entries.size() < maxEntries) {
+                entries.add(entry);
+            }
+        }
+
+        void merge(Cluster other) {
+            count += other.count;
+            for (Map.Entry<Integer, Long> testCount : other.testCounts.entrySet()) {
+                addCount(testCounts, testCount.getKey(), testCount.getValue());
+            }
+            for (Map.Entry<Long, Long> secondCount : other.secondCounts.entrySet()) {
+                addCount(secondCounts, secondCount.getKey(), secondCount.getValue());
+            }
+            firstTime = Math.min(firstTime, other.firstTime);
+            lastTime = Math.max(lastTime, other.lastTime);
+            for (int i = 0; i < other.entries.size() && entries.size() < maxEntries; i++) {
+                entries.add(other.entries.get(i));
+            }
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        /**
+         * @return the signature, escaped for the report
+         */
+        public String getHtmlSignature() {
+            return signature.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the tests of the entries with their counts, most frequent
+         *         first, e.g. "Login (12), Search (3)"
+         */
+        public String getTests() {
+            List<Map.Entry<Integer, Long>> counts = new ArrayList<Map.Entry<Integer, Long>>(testCounts.entrySet());
+            Collections.sort(counts, new Comparator<Map.Entry<Integer, Long>>() {
+                public int compare(Map.Entry<Integer, Long> a, Map.Entry<Integer, Long> b) {
+                    return b.getValue().compareTo(a.getValue());
+                }
+            });
+            StringBuffer sb = new StringBuffer();
+            for (Map.Entry<Integer, Long> testCount : counts) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(getTestName(testCount.getKey()) + " (" + testCount.getValue() + ")");
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return the time of the first entry, or "" if no time was read
+         */
+        public String getFirstOccurrence() {
+            return formatTime(firstTime);
+        }
+
+        /**
+         * @return the time of the last entry, or "" if no time was read
+         */
+        public String getLastOccurrence() {
+            return formatTime(lastTime);
+        }
+
+        /**
+         * @return the counts of the entries in the buckets of a graph
+         */
+        public long[] getBucketCounts(long startTime, long msPerBucket, int buckets) {
+            long[] counts = new long[buckets];
+            for (Map.Entry<Long, Long> secondCount : secondCounts.entrySet()) {
+                long bucket = (secondCount.getKey() * 1000 - startTime) / msPerBucket;
+                if (bucket >= 0 && bucket < buckets) {
+                    counts[(int) bucket] += secondCount.getValue();
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * @return the file with the copied entries, relative to the report
+         *         directory, or "" if they were not copied
+         */
+        public String getEntriesFile() {
+            return entriesFile;
+        }
+    }
+
+    /**
+     * Where an entry is in its error log.
+     */
+    private static class Entry {
+        final String fileName;
+        final long offset;
+        long length;
+
+        Entry(String fileName, long offset) {
+            this.fileName = fileName;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * @param maxEntries
+     *            the number of entries of each cluster that can be copied
+     */
+    public ErrorLogIndex(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Adds the entries of an error log, which may be compressed (see
+     * {@link LogFiles}).  Lines before the first header are ignored.
+     */
+    public void read(String fileName) throws IOException {
+        LogFiles.LineReader reader = new LogFiles.LineReader(LogFiles.open(fileName));
+        DateFormat[] legacyFormats = getLegacyFormats();
+        try {
+            Matcher header = null;
+            Entry entry = null;
+            List<String> lines = new ArrayList<String>();
+            long position = reader.getPosition();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = HEADER.matcher(line);
+                if (!matcher.matches()) {
+                    matcher = LEGACY_HEADER.matcher(line);
+                    if (!matcher.matches() || parseTime(matcher.group(1), legacyFormats) < 0) {
+                        matcher = null;
+                    }
+                }
+                if (matcher != null) {
+                    if (entry != null) {
+                        entry.length = position - entry.offset;
+                        add(header, lines, entry, legacyFormats);
+                    }
+                    header = matcher;
+                    entry = new Entry(fileName, position);
+                    lines.clear();
+                } else if (entry != null && lines.size() < MAX_ENTRY_LINES) {
+                    lines.add(line);
+                }
+                position = reader.getPosition();
+            }
+            if (entry != null) {
+                entry.length = position - entry.offset;
+                add(header, lines, entry, legacyFormats);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void add(Matcher header, List<String> lines, Entry entry, DateFormat[] legacyFormats) {
+        String message = header.group(5);
+        String signature = null;
+        lines.add(0, message);
+        for (String line : lines) {
+            Matcher matcher = EXCEPTION.matcher(line);
+            if (matcher.find()) {
+                signature = matcher.group(1);
+                if (matcher.group(2) != null && matcher.group(2).trim().length() > 0) {
+                    signature += ": " + normalize(matcher.group(2));
+                }
+                break;
+            }
+        }
+        if (signature == null) {
+            signature = normalize(message);
+        }
+        if (signature.length() > MAX_SIGNATURE_LENGTH) {
+            signature = signature.substring(0, MAX_SIGNATURE_LENGTH) + "...";
+        }
+        int testNumber = header.group(4) == null ? NO_TEST : Integer.parseInt(header.group(4));
+        getCluster(signature).add(testNumber, parseTime(header.group(1), legacyFormats), entry);
+        errorCount++;
+    }
+
+    /**
+     * Adds the clusters of another index, e.g. that of another process.
+     */
+    public void merge(ErrorLogIndex other) {
+        for (Cluster otherCluster : other.clusters.values()) {
+            getCluster(otherCluster.signature).merge(otherCluster);
+        }
+        errorCount += other.errorCount;
+    }
+
+    /**
+     * @return the cluster of a signature, created if there is room for it,
+     *         the cluster of other errors if not
+     */
+    private Cluster getCluster(String signature) {
+        Cluster cluster = clusters.get(signature);
+        if (cluster == null) {
+            if (clusters.size() >= MAX_CLUSTERS) {
+                signature = OTHER_ERRORS;
+                cluster = clusters.get(signature);
+            }
+            if (cluster == null) {
+                cluster = new Cluster(signature);
+                clusters.put(signature, cluster);
+            }
+        }
+        return cluster;
+    }
+
+    public void setTestName(int testNumber, String name) {
+        testNames.put(testNumber, name);
+    }
+
+    private String getTestName(int testNumber) {
+        if (testNumber == NO_TEST) {
+            return "no test";
+        }
+        String name = testNames.get(testNumber);
+        return name == null ? "Test " + testNumber : name;
+    }
+
+    /**
+     * @return the number of entries read
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return up to maxClusters clusters, the largest first
+     */
+    public List<Cluster> getClusters(int maxClusters) {
+        List<Cluster> sorted = new ArrayList<Cluster>(clusters.values());
+        Collections.sort(sorted, new Comparator<Cluster>() {
+            public int compare(Cluster a, Cluster b) {
+                if (a.count != b.count) {
+                    return a.count > b.count ? -1 : 1;
+                }
+                return a.signature.compareTo(b.signature);
+            }
+        });
+        return sorted.subList(0, Math.min(maxClusters, sorted.size()));
+    }
+
+    /**
+     * Copies the indexed entries of the clusters from the error logs into a
+     * text file per cluster, in the errors directory of the report, with the
+     * counts per test and per graph bucket.  Each log is read once, up to
+     * its last copied entry.
+     */
+    public void writeEntries(String reportDir, List<Cluster> clusterList, long startTime, long msPerBucket,
+            int buckets) throws IOException {
+        Map<String, List<Entry>> fileEntries = new TreeMap<String, List<Entry>>();
+        for (Cluster cluster : clusterList) {
+            for (Entry entry : cluster.entries) {
+                List<Entry> entries = fileEntries.get(entry.fileName);
+                if (entries == null) {
+                    entries = new ArrayList<Entry>();
+                    fileEntries.put(entry.fileName, entries);
+                }
+                entries.add(entry);
+            }
+        }
+        Map<Entry, String> texts = new HashMap<Entry, String>();
+        for (Map.Entry<String, List<Entry>> file : fileEntries.entrySet()) {
+            readEntries(file.getKey(), file.getValue(), texts);
+        }
+        File dir = new File(reportDir, ENTRIES_DIR);
+        dir.mkdirs();
+        for (int i = 0; i < clusterList.size(); i++) {
+            Cluster cluster = clusterList.get(i);
+            cluster.entriesFile = ENTRIES_DIR + "/error_" + (i + 1) + ".txt";
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(reportDir,
+                    cluster.entriesFile)), "UTF-8"));
+            try {
+                out.println(cluster.signature);
+                out.println(cluster.count + " errors: " + cluster.getTests());
+                if (cluster.firstTime <= cluster.lastTime) {
+                    out.println("From " + cluster.getFirstOccurrence() + " to " + cluster.getLastOccurrence());
+                    out.println();
+                    out.println("Errors per " + (msPerBucket / 1000.0) + " s since the start of the test:");
+                    long[] counts = cluster.getBucketCounts(startTime, msPerBucket, buckets);
+                    for (int bucket = 0; bucket < buckets; bucket++) {
+                        if (counts[bucket] > 0) {
+                            out.println("  " + (bucket * msPerBucket / 1000) + " s: " + counts[bucket]);
+                        }
+                    }
+                }
+                for (Entry entry : cluster.entries) {
+                    out.println();
+                    out.println("--- " + new File(entry.fileName).getName() + " at byte " + entry.offset);
+                    out.print(texts.get(entry));
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static void readEntries(String fileName, List<Entry> entries, Map<Entry, String> texts)
+            throws IOException {
+        Collections.sort(entries, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return a.offset < b.offset ? -1 : (a.offset == b.offset ? 0 : 1);
+            }
+        });
+        InputStream in = LogFiles.open(fileName);
+        try {
+            long position = 0;
+            for (Entry entry : entries) {
+                position += skip(in, entry.offset - position);
+                byte[] bytes = new byte[(int) Math.min(entry.length, MAX_ENTRY_BYTES)];
+                int length = 0;
+                int read;
+                while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0) {
+                    length += read;
+                }
+                position += length;
+                String text = new String(bytes, 0, length, "ISO-8859-1");
+                if (length < entry.length) {
+                    text += "...\n";
+                }
+                texts.put(entry, text);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long skip(InputStream in, long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count) {
+            long n = in.skip(count - skipped);
+            if (n <= 0) {
+                if (in.read() < 0) {
+                    break;
+                }
+                n = 1;
+            }
+            skipped += n;
+        }
+        return skipped;
+    }
+
+    private static void addCount(Map<Integer, Long> counts, int key, long count) {
+        Long total = counts.get(key);
+        counts.put(key, total == null ? count : total + count);
+    }
+
+    private static void addCount(TreeMap<Long, Long> counts, long key, long count) {
+        Long total = counts.get(key);
+        counts.put(key, total == null ? count : total + count);
+    }
+
+    private static String normalize(String message) {
+        String normalized = NUMBER.matcher(message).replaceAll("#");
+        return SPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * Older grinders wrote the time in the default format of their locale;
+     * that of recent JVMs may differ, so the US one is tried too.
+     */
+    private static DateFormat[] getLegacyFormats() {
+        return new DateFormat[] { DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM),
+                DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT),
+                DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM),
+                new SimpleDateFormat("M/d/yy h:mm:ss a", Locale.US) };
+    }
+
+    /**
+     * @return the time in ms since the epoch, or -1 if it cannot be read
+     */
+    private long parseTime(String text, DateFormat[] legacyFormats) {
+        char separator = text.length() == 23 ? text.charAt(19) : 0;
+        if ((separator == ',' || separator == '.') && Character.isDigit(text.charAt(0))) {
+            DateFormat format = headerFormats.get(separator);
+            if (format == null) {
+                format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss" + separator + "SSS");
+                headerFormats.put(separator, format);
+            }
+            Date date = format.parse(text, new ParsePosition(0));
+            if (date != null) {
+                return date.getTime();
+            }
+        }
+        for (DateFormat format : legacyFormats) {
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(text, position);
+            if (date != null && position.getIndex() == text.length()) {
+                return date.getTime();
+            }
+        }
+        return -1;
+    }
+
+    private static String formatTime(long time) {
+        if (time < 0 || time == Long.MAX_VALUE || time == Long.MIN_VALUE) {
+            return "";
+        }
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(time));
+    }
+}
@@ -21,6 +21,7 @@
 
 package org.jtmb.grinderAnalyzer;
 
+import java.text.NumberFormat;
 import java.util.Properties;
 import java.util.ArrayList;
 import java.util.List;
@@ -35,10 +36,65 @@ public class GAVelocityPlugin {
     protected HashMap<String, ReportRow> rowMap = new HashMap<String, ReportRow>();
 
     protected HashMap<String, String> graphMap = new HashMap<String, String>();
+    private List<Column> columns = null; // of columnNames, built when needed
     protected ReportRow totalsRow = null;
+    protected List<ErrorLogIndex.Cluster> errorClusters = new ArrayList<ErrorLogIndex.Cluster>();
+    protected long errorCount = 0;
     protected Configuration config;
     private static final Logger logger = Logger.getLogger(GAVelocityPlugin.class);
     private boolean isHTTP = false;
+    private boolean heatmap = false;
+    private boolean clientCharts = false;
+
+    /**
+     * A column of the report, with what the template needs of it looked up
+     * once rather than for every cell.
+     */
+    public static class Column {
+        private final String name;
+        private final int index;
+        private final String graph;
+        private final NumberFormat format; // the report is written on one thread
+
+        Column(String name, String graph) {
+            this.name = name;
+            this.index = Columns.getIndex(name);
+            this.graph = graph;
+            this.format = NumberFormat.getNumberInstance();
+            if (Columns.isPercent(index)) {
+                format.setMaximumFractionDigits(3);
+                format.setMinimumFractionDigits(3);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the index of the column in the report rows, see
+         *         {@link ReportRow#getColumnValue(int)}
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the value of the column in a row, formatted for the
+         *         report, or "" if the row has none
+         */
+        public String format(ReportRow row) {
+            double value = row.getColumnValue(index);
+            return Double.isNaN(value) ? "" : format.format(value);
+        }
+
+        /**
+         * @return the graph the cells link to, or ""
+         */
+        public String getGraph() {
+            return graph;
+        }
+    }
 
     public GAVelocityPlugin(Properties p) {
         this.config = new Configuration(p);
@@ -57,11 +113,20 @@ public class GAVelocityPlugin {
         if (config.isShowStandardDev()) {
             columnNames.add(Columns.RTIME_STD_DEV);
         }
+        if (config.isShowPercentiles()) {
+            for (double percentile : config.getPercentiles()) {
+                String name = Columns.getPercentileColumn(percentile);
+                columnNames.add(name);
+                graphMap.put(name, "meanMax_rtime");
+            }
+        }
         if (config.isShowTPS()) {
             columnNames.add(Columns.TPS);
         }
         graphMap.put(Columns.TX_NAME, "perf");
         graphMap.put(Columns.RTIME, "meanMax_rtime");
+        setHeatmap(config.isShowHeatmap());
+        clientCharts = config.isClientCharts();
         for (String name : columnNames) {
             logger.debug("non - HTTP Column name: " + name);
         }
@@ -84,13 +149,38 @@ public class GAVelocityPlugin {
         this.rowMap.put(name, row);
     }
 
+    /**
+     * Removes all data rows and the totals row, so the plugin can be reused
+     * for the next report.  Columns are kept.
+     */
+    public void clearRows() {
+        this.rowMap.clear();
+        this.totalsRow = null;
+        this.errorClusters = new ArrayList<ErrorLogIndex.Cluster>();
+        this.errorCount = 0;
+    }
+
     public List<String> getColumnNames() {
         return columnNames;
     }
 
+    public List<Column> getColumns() {
+        if (columns == null) {
+            columns = new ArrayList<Column>();
+            for (String name : columnNames) {
+                columns.add(new Column(name, getColumnGraph(name)));
+            }
+        }
+        return columns;
+    }
+
     public void addColumnName(String name) {
+        if (columnNames.contains(name)) {
+            return;
+        }
         logger.debug("Adding column -- " + name);
         columnNames.add(name);
+        columns = null;
     }
 
     public boolean isHTTP() {
@@ -124,6 +214,7 @@ public class GAVelocityPlugin {
             }
             graphMap.put(Columns.BYTES_PERSEC, "bandwidth");
             graphMap.put(Columns.RESOLVE_HOST, "rtime");
+            columns = null;
             for (String name : columnNames) {
                 logger.debug(" HTTP Column name: " + name);
             }
@@ -132,6 +223,26 @@ public class GAVelocityPlugin {
     }
 
 
+    /**
+     * The most frequent errors of the error_ logs of the report.
+     * 
+     * @param clusters
+     * @param count
+     *            the number of entries in the error_ logs
+     */
+    public void setErrorClusters(List<ErrorLogIndex.Cluster> clusters, long count) {
+        this.errorClusters = clusters;
+        this.errorCount = count;
+    }
+
+    public List<ErrorLogIndex.Cluster> getErrorClusters() {
+        return errorClusters;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
     public ReportRow getTotalsRow() {
         return totalsRow;
     }
@@ -140,6 +251,41 @@ public class GAVelocityPlugin {
         this.totalsRow = r;
     }
     
+    /**
+     * @return true if the report draws its graphs in the browser
+     */
+    public boolean isClientCharts() {
+        return clientCharts;
+    }
+
+    /**
+     * Draws the graphs of the next report in the browser, or links their
+     * .png files.  The live report always draws them in the browser.
+     * 
+     * @param clientCharts
+     */
+    public void setClientCharts(boolean clientCharts) {
+        this.clientCharts = clientCharts;
+    }
+
+    /**
+     * @return true if the report links to the heatmap graphs
+     */
+    public boolean isHeatmap() {
+        return heatmap;
+    }
+
+    /**
+     * Adds a column of links to the heatmap graphs, or not.  A report only
+     * has heatmaps if its store has bucket histograms, which merged sketches
+     * of different precisions do not.
+     * 
+     * @param heatmap
+     */
+    public void setHeatmap(boolean heatmap) {
+        this.heatmap = heatmap;
+    }
+
     /**
      * Wrapper for config.getOSStatsLink()
      * @return
@@ -0,0 +1,230 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.awt.Color;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import org.jfree.chart.renderer.LookupPaintScale;
+import org.jfree.chart.renderer.PaintScale;
+import org.jfree.data.xy.DefaultXYZDataset;
+import org.jfree.data.xy.XYZDataset;
+
+/**
+ * The response times of a transaction over time, for a heatmap graph: the
+ * number of passed tests in every cell of time column and response time
+ * row.
+ * 
+ * The counts come from the per-bucket histograms of a {@link BucketStore}.
+ * Neighbouring buckets are merged into one column when there are more
+ * buckets than columns.  The rows are the ranges of a one digit
+ * {@link LatencyHistogram}: one per ms below 32 ms, then ROWS_PER_DOUBLING
+ * per doubling of the response time.  Only cells with tests are kept.
+ */
+public class LatencyHeatmap {
+
+    public static final int ROWS_PER_DOUBLING = 16;
+
+    private static final LatencyHistogram ROWS = new LatencyHistogram(1);
+    // from few to many tests; the steps are evenly spaced on a log scale
+    private static final Color[] COLORS = { new Color(0xffffcc), new Color(0xffeda0), new Color(0xfed976),
+            new Color(0xfeb24c), new Color(0xfd8d3c), new Color(0xfc4e2a), new Color(0xe31a1c),
+            new Color(0xb10026) };
+
+    private final double columnSeconds;
+    private final int cellCount;
+    private final int[] columns;
+    private final int[] rows;
+    private final long[] counts;
+    private final int firstRow;
+    private final int lastRow;
+    private final long maxCount;
+
+    /**
+     * @param store
+     *            a store with percentiles over time
+     * @param ordinal
+     *            the transaction
+     * @param maxColumns
+     *            the most columns, usually the width of the graph
+     */
+    public LatencyHeatmap(BucketStore store, int ordinal, int maxColumns) {
+        int buckets = store.getBucketCount();
+        int bucketsPerColumn = Math.max(1, (buckets + maxColumns - 1) / Math.max(1, maxColumns));
+        columnSeconds = bucketsPerColumn * store.getMsPerBucket() / 1000.0;
+        int columnCount = (buckets + bucketsPerColumn - 1) / bucketsPerColumn;
+        long[][] cells = new long[columnCount][];
+        int cellCount = 0;
+        int firstRow = Integer.MAX_VALUE;
+        int lastRow = -1;
+        long maxCount = 0;
+        for (int column = 0; column < columnCount; column++) {
+            long[] histogram = new long[ROWS.getLength()];
+            int end = Math.min(buckets, (column + 1) * bucketsPerColumn);
+            for (int bucket = column * bucketsPerColumn; bucket < end; bucket++) {
+                store.addBucketLatencies(bucket, ordinal, ROWS, histogram);
+            }
+            for (int row = 0; row < histogram.length; row++) {
+                if (histogram[row] > 0) {
+                    cellCount++;
+                    firstRow = Math.min(firstRow, row);
+                    lastRow = Math.max(lastRow, row);
+                    maxCount = Math.max(maxCount, histogram[row]);
+                    cells[column] = histogram;
+                }
+            }
+        }
+        this.cellCount = cellCount;
+        this.firstRow = lastRow < 0 ? 0 : firstRow;
+        this.lastRow = Math.max(0, lastRow);
+        this.maxCount = maxCount;
+        columns = new int[cellCount];
+        rows = new int[cellCount];
+        counts = new long[cellCount];
+        int cell = 0;
+        for (int column = 0; column < columnCount; column++) {
+            if (cells[column] == null) {
+                continue;
+            }
+            for (int row = this.firstRow; row <= this.lastRow; row++) {
+                if (cells[column][row] > 0) {
+                    columns[cell] = column;
+                    rows[cell] = row;
+                    counts[cell] = cells[column][row];
+                    cell++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the time covered by a column
+     */
+    public double getColumnSeconds() {
+        return columnSeconds;
+    }
+
+    /**
+     * @return the lowest row with tests, 0 if there are none
+     */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * @return the highest row with tests, 0 if there are none
+     */
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    public long getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * @return the number of cells with tests
+     */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public int getColumn(int cell) {
+        return columns[cell];
+    }
+
+    public int getRow(int cell) {
+        return rows[cell];
+    }
+
+    public long getCount(int cell) {
+        return counts[cell];
+    }
+
+    /**
+     * @return the cells with tests: x is the start of the column in seconds,
+     *         y the row and z the number of tests
+     */
+    public XYZDataset getDataset() {
+        double[][] data = new double[3][cellCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            data[0][cell] = columns[cell] * columnSeconds;
+            data[1][cell] = rows[cell];
+            data[2][cell] = counts[cell];
+        }
+        DefaultXYZDataset dataset = new DefaultXYZDataset();
+        dataset.addSeries("passed tests", data);
+        return dataset;
+    }
+
+    /**
+     * @return the colors of the numbers of tests, from 1 to the largest
+     *         count of a cell
+     */
+    public PaintScale getPaintScale() {
+        double upper = Math.max(2, maxCount + 1);
+        LookupPaintScale scale = new LookupPaintScale(1, upper, COLORS[0]);
+        for (int i = 0; i < COLORS.length; i++) {
+            scale.add(Math.pow(upper, (double) i / COLORS.length), COLORS[i]);
+        }
+        return scale;
+    }
+
+    /**
+     * @return the lowest response time of a row, in ms
+     */
+    public static long getRowLowestValue(int row) {
+        return ROWS.getLowestValueAt(row);
+    }
+
+    /**
+     * @return a format showing row numbers as the lowest response time of
+     *         the row, for the axis of a heatmap
+     */
+    public static NumberFormat getRowFormat() {
+        return new RowFormat();
+    }
+
+    private static class RowFormat extends NumberFormat {
+
+        private static final long serialVersionUID = 1L;
+
+        public StringBuffer format(double number, StringBuffer toAppendTo, FieldPosition pos) {
+            return format(Math.round(number), toAppendTo, pos);
+        }
+
+        public StringBuffer format(long number, StringBuffer toAppendTo, FieldPosition pos) {
+            long ms = getRowLowestValue((int) Math.max(0, Math.min(number, ROWS.getLength() - 1)));
+            if (ms < 1000) {
+                return toAppendTo.append(ms).append(" ms");
+            }
+            NumberFormat seconds = NumberFormat.getNumberInstance();
+            seconds.setMaximumFractionDigits(2);
+            return toAppendTo.append(seconds.format(ms / 1000.0)).append(" s");
+        }
+
+        public Number parse(String source, ParsePosition parsePosition) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+/**
+ * Layout of a fixed-size, log-bucketed latency histogram, in the manner of
+ * HdrHistogram.  Values (response times in ms) are grouped in power of two
+ * ranges, each split into enough linear sub-buckets to keep the requested
+ * number of significant decimal digits.
+ * 
+ * The counts themselves live in arrays owned by the caller, so that many
+ * histograms can share one flat array; each histogram is the
+ * {@link #getLength()} counts starting at some offset.  Recording a value is
+ * a constant time index computation and an array increment.
+ * 
+ * Values above {@link #HIGHEST_TRACKABLE_MS} are recorded as that value.
+ */
+public class LatencyHistogram {
+
+    public static final long HIGHEST_TRACKABLE_MS = 60L * 60L * 1000L; // one hour
+
+    private final int significantDigits;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final int length;
+
+    /**
+     * @param significantDigits
+     *            1 to 3
+     */
+    public LatencyHistogram(int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 3) {
+            throw new IllegalArgumentException("significant digits must be 1 to 3, not " + significantDigits);
+        }
+        this.significantDigits = significantDigits;
+        long largestSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestSingleUnitResolution) / Math.log(2));
+        subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        int subBucketCount = 1 << subBucketCountMagnitude;
+        subBucketHalfCount = subBucketCount / 2;
+        subBucketMask = subBucketCount - 1;
+        leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+        int bucketCount = 1;
+        long smallestUntrackableValue = subBucketCount;
+        while (smallestUntrackableValue <= HIGHEST_TRACKABLE_MS) {
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        length = (bucketCount + 1) * subBucketHalfCount;
+    }
+
+    public int getSignificantDigits() {
+        return significantDigits;
+    }
+
+    /**
+     * @return the number of counts in one histogram
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param value
+     *            a response time in ms
+     * @return the index of the count for the value, relative to the start of
+     *         the histogram
+     */
+    public int getIndex(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > HIGHEST_TRACKABLE_MS) {
+            value = HIGHEST_TRACKABLE_MS;
+        }
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + subBucketIndex - subBucketHalfCount;
+    }
+
+    /**
+     * @return the lowest value that is counted at index
+     */
+    public long getLowestValueAt(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return (long) subBucketIndex << bucketIndex;
+    }
+
+    /**
+     * @return the highest value that is counted at index
+     */
+    public long getHighestValueAt(int index) {
+        int bucketIndex = Math.max(0, (index >> subBucketHalfCountMagnitude) - 1);
+        return Math.min(getLowestValueAt(index) + (1L << bucketIndex) - 1, HIGHEST_TRACKABLE_MS);
+    }
+
+    public void record(long[] counts, int offset, long value) {
+        counts[offset + getIndex(value)]++;
+    }
+
+    public void record(int[] counts, int offset, long value) {
+        counts[offset + getIndex(value)]++;
+    }
+
+    /**
+     * @param counts
+     * @param offset
+     *            start of the histogram in counts
+     * @param percentile
+     *            0 to 100
+     * @return the value at the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(long[] counts, int offset, double percentile) {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += counts[i];
+        }
+        long countAtPercentile = getCountAtPercentile(total, percentile);
+        long seen = 0;
+        for (int i = 0; i < length && total > 0; i++) {
+            seen += counts[offset + i];
+            if (seen >= countAtPercentile) {
+                return getHighestValueAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @see #getValueAtPercentile(long[], int, double)
+     */
+    public long getValueAtPercentile(int[] counts, int offset, double percentile) {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += counts[i];
+        }
+        long countAtPercentile = getCountAtPercentile(total, percentile);
+        long seen = 0;
+        for (int i = 0; i < length && total > 0; i++) {
+            seen += counts[offset + i];
+            if (seen >= countAtPercentile) {
+                return getHighestValueAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the mean of the recorded values, each taken as the middle of
+     *         its count's range, or 0 if nothing was recorded
+     */
+    public double getMean(long[] counts, int offset) {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            long count = counts[offset + i];
+            if (count != 0) {
+                total += count;
+                sum += count * (getLowestValueAt(i) + getHighestValueAt(i)) / 2.0;
+            }
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * @return the standard deviation of the recorded values, each taken as
+     *         the middle of its count's range, or 0 if nothing was recorded
+     */
+    public double getStandardDeviation(long[] counts, int offset) {
+        long total = 0;
+        double sum = 0;
+        double squares = 0;
+        for (int i = 0; i < length; i++) {
+            long count = counts[offset + i];
+            if (count != 0) {
+                double value = (getLowestValueAt(i) + getHighestValueAt(i)) / 2.0;
+                total += count;
+                sum += count * value;
+                squares += count * value * value;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        double mean = sum / total;
+        return Math.sqrt(Math.max(0, squares / total - mean * mean));
+    }
+
+    private static long getCountAtPercentile(long total, double percentile) {
+        double p = Math.min(Math.max(percentile, 0.0), 100.0);
+        return Math.max(1, (long) Math.ceil(p / 100.0 * total));
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+/**
+ * Something that is built up from the lines of grinder data_ files and that
+ * can be split into independent partial aggregates, one per parsing
+ * thread, and merged back together afterwards.  This is what lets
+ * {@link DataLogIngester} parse chunks in parallel.  A partial sees the lines
+ * of several chunks, in no particular order.
+ * 
+ * Implementations may be written in Jython.
+ */
+public interface LogAggregate extends DataLogHandler {
+
+    /**
+     * @return a new, empty aggregate with the same settings as this one. It
+     *         will only ever be used by a single thread.
+     */
+    public LogAggregate newPartial();
+
+    /**
+     * Adds everything collected by a partial aggregate (created by
+     * {@link #newPartial()}) to this one.
+     * 
+     * @param partial
+     */
+    public void merge(LogAggregate partial);
+}
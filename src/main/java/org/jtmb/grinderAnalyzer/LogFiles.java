@@ -0,0 +1,189 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens grinder log files that may be compressed.  Files ending in .gz are
+ * decompressed with java.util.zip; files ending in .zst are piped through
+ * the zstd command, which must be on the PATH.  Anything else is read as
+ * is.
+ * 
+ * Compressed files can only be read from start to end, so they can be
+ * neither split into chunks nor read backwards.
+ */
+public class LogFiles {
+
+    public static final String GZIP_SUFFIX = ".gz";
+    public static final String ZSTD_SUFFIX = ".zst";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LogFiles() {
+    }
+
+    public static boolean isCompressed(String fileName) {
+        return fileName.endsWith(GZIP_SUFFIX) || fileName.endsWith(ZSTD_SUFFIX);
+    }
+
+    /**
+     * @return a stream of the (decompressed) contents of the file
+     * @throws IOException
+     */
+    public static InputStream open(String fileName) throws IOException {
+        if (fileName.endsWith(GZIP_SUFFIX)) {
+            return new GZIPInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+        }
+        if (fileName.endsWith(ZSTD_SUFFIX)) {
+            return openZstd(fileName);
+        }
+        return new FileInputStream(fileName);
+    }
+
+    private static InputStream openZstd(String fileName) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder("zstd", "-dcq", fileName);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        final Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            throw new IOException("Could not run zstd to read " + fileName + ".  Is zstd installed?", e);
+        }
+        process.getOutputStream().close();
+        final String name = fileName;
+        return new FilterInputStream(new BufferedInputStream(process.getInputStream(), BUFFER_SIZE)) {
+            private boolean closed = false;
+
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                super.close();
+                try {
+                    int exitValue = process.waitFor();
+                    if (exitValue != 0) {
+                        throw new IOException("zstd failed with exit code " + exitValue + " on " + name);
+                    }
+                } catch (InterruptedException e) {
+                    process.destroy();
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading " + name);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the first line of the file, without its terminator, or null if
+     *         the file is empty
+     * @throws IOException
+     */
+    public static String readFirstLine(String fileName) throws IOException {
+        LineReader reader = new LineReader(open(fileName));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the whole file, keeping only its last lines.  This is how the end
+     * of a compressed file is found.
+     * 
+     * @param fileName
+     * @param maxLines
+     * @return up to maxLines lines, in file order, without terminators
+     * @throws IOException
+     */
+    public static String[] readLastLines(String fileName, int maxLines) throws IOException {
+        ArrayDeque<String> lines = new ArrayDeque<String>();
+        LineReader reader = new LineReader(open(fileName));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (lines.size() == maxLines) {
+                    lines.removeFirst();
+                }
+                lines.addLast(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Splits a stream into lines on LF or CRLF, decoding bytes as ISO-8859-1
+     * like {@link ReverseLineReader}, so a line has as many chars as bytes.
+     */
+    static class LineReader {
+        private final InputStream input;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private long position = 0;
+
+        LineReader(InputStream input) {
+            this.input = new BufferedInputStream(input, BUFFER_SIZE);
+        }
+
+        String readLine() throws IOException {
+            line.reset();
+            int b = input.read();
+            if (b < 0) {
+                return null;
+            }
+            position++;
+            while (b >= 0 && b != '\n') {
+                line.write(b);
+                b = input.read();
+                if (b >= 0) {
+                    position++;
+                }
+            }
+            byte[] bytes = line.toByteArray();
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+            return new String(bytes, 0, length, "ISO-8859-1");
+        }
+
+        /**
+         * @return the offset in the (decompressed) stream of the next line
+         */
+        long getPosition() {
+            return position;
+        }
+
+        void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.apache.log4j.Logger;
+
+/**
+ * Follows grinder data_ files while the agents are still writing them.
+ * 
+ * Every file has its own {@link BucketStore} and the byte offset just past
+ * the last complete line read.  A refresh reads only the bytes appended
+ * since the previous one, so its cost tracks the new data rather than the
+ * size of the files.  A trailing line that is still being written is left
+ * for the next refresh.  Files that shrink are read again from the start.
+ * Compressed files cannot be followed; they are read again whenever they
+ * change.
+ * 
+ * The tests are learned from the data as it arrives, since the out_ files
+ * only name them once the test is over.  When caching is enabled the
+ * stores are checkpointed to the caches (see {@link BucketStoreCache})
+ * every CHECKPOINT_REFRESHES refreshes and by {@link #checkpoint()}, so a
+ * restarted follower, and the final report, carry on from there.
+ */
+public class LogFollower {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    // a checkpoint rewrites the whole cache of a file, so not every refresh
+    private static final int CHECKPOINT_REFRESHES = 10;
+
+    private final Configuration config;
+    private final BucketStoreCache cache;
+    private final List<FollowedFile> files = new ArrayList<FollowedFile>();
+    private final SortedSet<Integer> testNumbers = new TreeSet<Integer>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean http = false;
+    private int refreshes = 0;
+    private static final Logger logger = Logger.getLogger(LogFollower.class);
+
+    /**
+     * @param dataFiles
+     * @param testNumbers
+     *            the tests known so far, may be empty
+     */
+    public LogFollower(String[] dataFiles, int[] testNumbers, Configuration config) {
+        this.config = config;
+        this.cache = new BucketStoreCache(config);
+        for (int testNumber : testNumbers) {
+            this.testNumbers.add(testNumber);
+        }
+        for (String dataFile : dataFiles) {
+            files.add(new FollowedFile(dataFile));
+        }
+        if (config.isUseCache()) {
+            for (FollowedFile file : files) {
+                file.resume();
+            }
+        }
+    }
+
+    /**
+     * Reads the lines appended to the data files since the last refresh.
+     * 
+     * @return the number of bytes read
+     * @throws IOException
+     */
+    public long refresh() throws IOException {
+        long read = 0;
+        for (FollowedFile file : files) {
+            read += file.refresh();
+        }
+        if (++refreshes % CHECKPOINT_REFRESHES == 0) {
+            checkpoint();
+        }
+        return read;
+    }
+
+    /**
+     * Writes the lines read since the last checkpoint to the caches, if
+     * caching is enabled.
+     */
+    public void checkpoint() {
+        if (!config.isUseCache()) {
+            return;
+        }
+        for (FollowedFile file : files) {
+            file.checkpoint();
+        }
+    }
+
+    /**
+     * @return the tests seen so far, ascending
+     */
+    public int[] getTestNumbers() {
+        int[] numbers = new int[testNumbers.size()];
+        int i = 0;
+        for (int testNumber : testNumbers) {
+            numbers[i++] = testNumber;
+        }
+        return numbers;
+    }
+
+    /**
+     * @return true if any data line had the HTTP columns
+     */
+    public boolean isHTTP() {
+        return http;
+    }
+
+    /**
+     * @return a store with the configured number of buckets holding all
+     *         lines read so far
+     */
+    public BucketStore getStore() {
+        BucketStore store = new BucketStore(getTestNumbers(), config);
+        for (FollowedFile file : files) {
+            store.merge(file.store);
+        }
+        return store;
+    }
+
+    /**
+     * @return the lines read so far at the configured resolutions, or null
+     *         if there are none
+     */
+    public BucketPyramid getPyramid() {
+        if (config.getResolutions().length == 0) {
+            return null;
+        }
+        BucketPyramid pyramid = new BucketPyramid(getTestNumbers(), config);
+        for (FollowedFile file : files) {
+            pyramid.merge(file.store);
+        }
+        return pyramid;
+    }
+
+    private BucketStore newFileStore() {
+        return BucketStoreCache.newFileStore(getTestNumbers(), config);
+    }
+
+    /**
+     * The state of a single data file.  Also adds the parsed lines to the
+     * file's store, extending the store with tests it does not know yet.
+     */
+    private class FollowedFile implements DataLogHandler {
+        private final String dataFile;
+        private final boolean compressed;
+        private BucketStore store;
+        private long offset = 0;       // just past the last complete line read
+        private long lastModified = 0; // of the file when it was last read
+        private boolean checkpointed = true; // the cache has every line read
+
+        FollowedFile(String dataFile) {
+            this.dataFile = dataFile;
+            this.compressed = LogFiles.isCompressed(dataFile);
+            this.store = newFileStore();
+        }
+
+        void resume() {
+            BucketStoreCache.Checkpoint checkpoint = cache.read(dataFile);
+            try {
+                if (checkpoint == null || !checkpoint.isPrefixOf(dataFile)) {
+                    return;
+                }
+                // the lines read before are not seen again, so tell HTTP
+                // tests by the header line
+                String header = LogFiles.readFirstLine(dataFile);
+                if (header != null && header.indexOf("HTTP") >= 0) {
+                    http = true;
+                }
+            } catch (IOException e) {
+                logger.warn("    Could not resume " + dataFile + ": " + e);
+                return;
+            }
+            store = checkpoint.store;
+            offset = checkpoint.length;
+            lastModified = checkpoint.lastModified;
+            for (int testNumber : store.getOrdinals().getTestNumbers()) {
+                testNumbers.add(testNumber);
+            }
+            logger.info("    Resuming " + dataFile + " at byte " + offset);
+        }
+
+        long refresh() throws IOException {
+            File file = new File(dataFile);
+            long modified = file.lastModified();
+            long length = file.length();
+            if (length < offset || (compressed && length != offset)) {
+                if (!compressed) {
+                    logger.warn("    " + dataFile + " has shrunk, reading it again");
+                }
+                store = newFileStore();
+                offset = 0;
+            }
+            if (length == offset) {
+                return 0;
+            }
+            long start = offset;
+            if (compressed) {
+                new DataLogParser().parseFile(dataFile, this);
+                offset = length;
+            } else {
+                readFrom(file, length);
+            }
+            lastModified = modified;
+            if (offset > start) {
+                checkpointed = false;
+            }
+            return offset - start;
+        }
+
+        void checkpoint() {
+            if (!checkpointed) {
+                cache.write(dataFile, store, offset, lastModified);
+                checkpointed = true;
+            }
+        }
+
+        /**
+         * Parses the complete lines from offset to length.
+         */
+        private void readFrom(File file, long length) throws IOException {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                DataLogParser parser = new DataLogParser();
+                buffer.clear();
+                long position = offset;
+                while (position < length) {
+                    buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + length - position));
+                    int read = channel.read(buffer, position);
+                    if (read <= 0) {
+                        break;
+                    }
+                    position += read;
+                    buffer.flip();
+                    int before = buffer.position();
+                    parser.parse(buffer, this, false);
+                    offset += buffer.position() - before;
+                    if (buffer.position() == before && buffer.limit() == buffer.capacity()) {
+                        throw new IOException("Line too long at offset " + offset + " in " + dataFile);
+                    }
+                    buffer.compact();
+                }
+            } finally {
+                input.close();
+            }
+        }
+
+        public void handleRecord(DataLogRecord record) {
+            if (record.isHTTP()) {
+                http = true;
+            }
+            int test = record.getTest();
+            if (store.isPerTransaction() && store.getOrdinals().getOrdinal(test) == TransactionOrdinals.UNKNOWN) {
+                testNumbers.add(test);
+                BucketStore grown = newFileStore();
+                grown.merge(store);
+                store = grown;
+            }
+            store.addRecord(record);
+        }
+    }
+}
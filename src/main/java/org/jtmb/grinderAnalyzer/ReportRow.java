@@ -22,121 +22,159 @@
 package org.jtmb.grinderAnalyzer;
 
 import java.text.NumberFormat;
+import java.util.Arrays;
 import org.apache.log4j.Logger;
-import java.util.HashMap;
-import java.util.Locale;
 
+/**
+ * The values of one transaction in a report.  They are kept in an array,
+ * indexed by the column indices of {@link Columns}; columns without a value
+ * hold NaN.
+ */
 public class ReportRow {
 
     private String txName;
     private NumberFormat inputNumberFormat; // used when parsing the grinder log file
-    private NumberFormat outputNumberFormat;
-    private NumberFormat outputPercentFormat;
     private static final Logger logger = Logger.getLogger(ReportRow.class);
 
-    private HashMap<String, Number> transactionData;
+    private static final int TEST_PASSED = Columns.getIndex(Columns.TEST_PASSED);
+    private static final int TESTS_ERRS = Columns.getIndex(Columns.TESTS_ERRS);
+    private static final int PASS_RATE = Columns.getIndex(Columns.PASS_RATE);
+    private static final int RTIME = Columns.getIndex(Columns.RTIME);
+    private static final int RTIME_STD_DEV = Columns.getIndex(Columns.RTIME_STD_DEV);
+    private static final int TPS = Columns.getIndex(Columns.TPS);
+    private static final int RESPONSE_LEN = Columns.getIndex(Columns.RESPONSE_LEN);
+    private static final int BYTES_PERSEC = Columns.getIndex(Columns.BYTES_PERSEC);
+    private static final int RESPONSE_ERRORS = Columns.getIndex(Columns.RESPONSE_ERRORS);
+    private static final int RESOLVE_HOST = Columns.getIndex(Columns.RESOLVE_HOST);
+    private static final int CONNECT = Columns.getIndex(Columns.CONNECT);
+    private static final int FIRST_BYTE = Columns.getIndex(Columns.FIRST_BYTE);
+
+    private double[] values;
 
     public ReportRow(Configuration config) {
-        if (config.isNonDefaultLocale()) {
-            // assume that at a minimum, a language has been provided
-            Locale locale = new Locale(config.getLocaleLanguage());
-            if (! config.getLocaleCountry().equals("")) {
-                locale = new Locale(config.getLocaleLanguage(), config.getLocaleCountry());
-            }
-            if (! config.getLocaleVariant().equals("")) {
-                locale = new Locale(config.getLocaleLanguage(),
-                        config.getLocaleCountry(),
-                        config.getLocaleVariant());
-            }
-            inputNumberFormat = NumberFormat.getNumberInstance(locale);
-        }
-        else {
-            inputNumberFormat = NumberFormat.getNumberInstance(); // default locale
-        }
-        outputNumberFormat = NumberFormat.getNumberInstance();
-        outputPercentFormat = NumberFormat.getNumberInstance();
-        this.outputPercentFormat.setMaximumFractionDigits(3);
-        this.outputPercentFormat.setMinimumFractionDigits(3);
-        this.transactionData = new HashMap<String, Number>();
-    }
-
-    private NumberFormat getOutputNumberFormat(String columnName) {
-        // pass/fail column is in percent format
-    	if (columnName.equals(Columns.PASS_RATE)) {
-    		return outputPercentFormat;
-    	}
-    	// response time group columns are in percent format
-    	if (columnName.toUpperCase().endsWith(" SEC") && ! columnName.equals(Columns.BYTES_PERSEC)) {
-    		return outputPercentFormat;
-    	}
-    	return outputNumberFormat;
+        inputNumberFormat = config.getInputNumberFormat();
+        values = new double[Columns.size()];
+        Arrays.fill(values, Double.NaN);
     }
-    
+
+    /**
+     * @return the value of the column, formatted like the cells of the
+     *         report (see {@link GAVelocityPlugin.Column#format(ReportRow)})
+     */
     public String getColumnData(String columnName) {
-        Number num = getColumnDataAsNum(columnName);
-        return getOutputNumberFormat(columnName).format(num);
+        return new GAVelocityPlugin.Column(columnName, "").format(this);
     }
 
     public Number getColumnDataAsNum(String columnName) {
-        return transactionData.get(columnName);    }
-    
-    
-    private Number getNumberFromString(String num) {
+        return getColumnDataAsNum(Columns.getIndex(columnName));
+    }
+
+    /**
+     * For the Jython scripts; the report formats
+     * {@link #getColumnValue(int)}.
+     * 
+     * @return the value of the column, or null if it has none
+     */
+    public Number getColumnDataAsNum(int column) {
+        double value = getValue(column);
+        return Double.isNaN(value) ? null : (Number) new Double(value);
+    }
+
+    /**
+     * @param column
+     *            the index of the column, see {@link Columns#getIndex(String)}
+     * @return the value of the column, or NaN if it has none
+     */
+    public double getColumnValue(int column) {
+        return getValue(column);
+    }
+
+    private double getNumberFromString(String num) {
     // expects a String in the format of the input locale
         try {
-            return inputNumberFormat.parse(num);
+            return inputNumberFormat.parse(num).doubleValue();
         } catch (Exception e) {
             logger.warn("Couldn't parse '" + num + "' as a number.  Using -1");
             return -1;
         }
     }
 
+    private void setValue(int column, double value) {
+        if (column >= values.length) {
+            // a column registered after this row was created
+            int length = values.length;
+            values = Arrays.copyOf(values, Math.max(column + 1, Columns.size()));
+            Arrays.fill(values, length, values.length, Double.NaN);
+        }
+        values[column] = value;
+    }
+
+    private double getValue(int column) {
+        return column < values.length ? values[column] : Double.NaN;
+    }
+
+    private boolean hasValue(int column) {
+        return !Double.isNaN(getValue(column));
+    }
+
+    /**
+     * Sets a column to a number of the grinder out_ file.
+     * 
+     * @param columnName
+     *            see {@link Columns}
+     * @param value
+     *            a number in the format of the input locale
+     */
+    public void setColumnData(String columnName, String value) {
+        setValue(Columns.getIndex(columnName), getNumberFromString(value));
+    }
+
     public void setTests(String tests) {
-        transactionData.put(Columns.TEST_PASSED, getNumberFromString(tests));
+        setValue(TEST_PASSED, getNumberFromString(tests));
     }
 
     public void setErrors(String errors) {
-        transactionData.put(Columns.TESTS_ERRS, getNumberFromString(errors));
+        setValue(TESTS_ERRS, getNumberFromString(errors));
     }
 
     public void setMeanTestTime(String meanTestTime) {
-        transactionData.put(Columns.RTIME, getNumberFromString(meanTestTime));
+        setValue(RTIME, getNumberFromString(meanTestTime));
     }
 
     public void setTestTimeStandardDev(String testTimeStandardDev) {
-        transactionData.put(Columns.RTIME_STD_DEV, getNumberFromString(testTimeStandardDev));
+        setValue(RTIME_STD_DEV, getNumberFromString(testTimeStandardDev));
     }
 
     public void setMeanResponseLength(String meanResponseLength) {
-        transactionData.put(Columns.RESPONSE_LEN, getNumberFromString(meanResponseLength));
+        setValue(RESPONSE_LEN, getNumberFromString(meanResponseLength));
     }
 
     public void setBytesPerSec(String bytesPerSec) {
-        transactionData.put(Columns.BYTES_PERSEC, getNumberFromString(bytesPerSec));
+        setValue(BYTES_PERSEC, getNumberFromString(bytesPerSec));
     }
 
     public void setResponseErrors(String responseErrors) {
-        transactionData.put(Columns.RESPONSE_ERRORS, getNumberFromString(responseErrors));
+        setValue(RESPONSE_ERRORS, getNumberFromString(responseErrors));
     }
 
     public void setTPS(String tps) {
-        transactionData.put(Columns.TPS, getNumberFromString(tps));
+        setValue(TPS, getNumberFromString(tps));
     }
 
     public void setMeanTimeResolveHost(String meanTimeResolveHost) {
-        transactionData.put(Columns.RESOLVE_HOST, getNumberFromString(meanTimeResolveHost));
+        setValue(RESOLVE_HOST, getNumberFromString(meanTimeResolveHost));
     }
 
     public void setMeanTimeConnection(String meanTimeConnection) {
-        transactionData.put(Columns.CONNECT, getNumberFromString(meanTimeConnection));
+        setValue(CONNECT, getNumberFromString(meanTimeConnection));
     }
 
     public void setMeanTimeFirstByte(String meanTimeFirstByte) {
-        transactionData.put(Columns.FIRST_BYTE, getNumberFromString(meanTimeFirstByte));
+        setValue(FIRST_BYTE, getNumberFromString(meanTimeFirstByte));
     }
 
     public void addNumericTransactionData(String key, Float val) {
-        transactionData.put(key, (Number) val);
+        setValue(Columns.getIndex(key), val.doubleValue());
     }
     
     public String getTxName() {
@@ -144,6 +182,13 @@ public class ReportRow {
     }
 
     public String getSafeTxName() {
+        return getSafeName(txName);
+    }
+
+    /**
+     * @return the transaction name as used in the names of its graphs
+     */
+    public static String getSafeName(String txName) {
         return txName.replaceAll(" ", "_").replaceAll("/", "_").replaceAll(":", "_");
     }
 
@@ -151,11 +196,96 @@ public class ReportRow {
         this.txName = txName;
     }
 
+    /**
+     * Folds the summary of the same transaction from another grinder process
+     * into this row.  Counts and rates are summed; means are weighted by the
+     * number of passed tests and the standard deviations are pooled.
+     * Response time group columns are not merged.
+     * 
+     * @param other
+     */
+    public void addProcessRow(ReportRow other) {
+        if (txName == null) {
+            txName = other.getTxName();
+        }
+        double tests = getSum(TEST_PASSED);
+        double otherTests = other.getSum(TEST_PASSED);
+        double totalTests = tests + otherTests;
+        if (other.hasValue(RTIME_STD_DEV)) {
+            // pooled variance: E[x^2] - E[x]^2 over both processes
+            double mean = getSum(RTIME);
+            double otherMean = other.getSum(RTIME);
+            double stdDev = getSum(RTIME_STD_DEV);
+            double otherStdDev = other.getSum(RTIME_STD_DEV);
+            double variance = 0;
+            if (totalTests > 0) {
+                double combinedMean = (tests * mean + otherTests * otherMean) / totalTests;
+                double squares = tests * (stdDev * stdDev + mean * mean)
+                        + otherTests * (otherStdDev * otherStdDev + otherMean * otherMean);
+                variance = Math.max(0, squares / totalTests - combinedMean * combinedMean);
+            }
+            setValue(RTIME_STD_DEV, Math.sqrt(variance));
+        }
+        for (int column : new int[] { RTIME, RESPONSE_LEN, RESOLVE_HOST, CONNECT, FIRST_BYTE }) {
+            if (other.hasValue(column)) {
+                double mean = totalTests == 0 ? 0 :
+                    (tests * getSum(column) + otherTests * other.getSum(column)) / totalTests;
+                setValue(column, mean);
+            }
+        }
+        for (int column : new int[] { TEST_PASSED, TESTS_ERRS, TPS, BYTES_PERSEC, RESPONSE_ERRORS }) {
+            if (other.hasValue(column)) {
+                setValue(column, getSum(column) + other.getSum(column));
+            }
+        }
+        calculatePassRate();
+    }
+
+    /**
+     * Fills the row from the counters of a bucket store, for data_ files
+     * whose out_ file has no summary yet.  Like grinder's, the response time
+     * mean and standard deviation are of passed tests only; they come from
+     * the latency histograms.  The other means are totals divided by the
+     * passed tests, as in the graphs.  Rates are over the time between the
+     * first and the last line.
+     *
+     * @param store
+     * @param ordinal
+     *            the transaction of the row
+     */
+    public void setFromStore(BucketStore store, int ordinal) {
+        double tests = store.getTestTotal(BucketStore.Column.PASSED, ordinal);
+        double seconds = Math.max(1, store.getEndTime() - store.getStartTime()) / 1000.0;
+        setValue(TEST_PASSED, tests);
+        setValue(TESTS_ERRS, store.getTestTotal(BucketStore.Column.FAILED, ordinal));
+        setValue(RTIME, store.getResponseTimeMean(ordinal));
+        setValue(RTIME_STD_DEV, store.getResponseTimeStandardDeviation(ordinal));
+        setValue(TPS, tests / seconds);
+        setValue(BYTES_PERSEC, store.getTestTotal(BucketStore.Column.BYTES, ordinal) / seconds);
+        setValue(RESPONSE_ERRORS, store.getTestTotal(BucketStore.Column.RESPONSE_ERRORS, ordinal));
+        int[] columns = { RESPONSE_LEN, RESOLVE_HOST, CONNECT, FIRST_BYTE };
+        BucketStore.Column[] storeColumns = { BucketStore.Column.BYTES, BucketStore.Column.RESOLVE_TIME,
+                BucketStore.Column.CONNECT_TIME, BucketStore.Column.FIRST_BYTE_TIME };
+        for (int i = 0; i < columns.length; i++) {
+            double mean = tests == 0 ? 0 : store.getTestTotal(storeColumns[i], ordinal) / tests;
+            setValue(columns[i], mean);
+        }
+        calculatePassRate();
+    }
+
+    /**
+     * @return the value of the column, 0 if it has none
+     */
+    private double getSum(int column) {
+        double value = getValue(column);
+        return Double.isNaN(value) ? 0 : value;
+    }
+
     public void calculatePassRate() {
-        double tests = getColumnDataAsNum(Columns.TEST_PASSED).doubleValue();
-        double errors = getColumnDataAsNum(Columns.TESTS_ERRS).doubleValue();
+        double tests = getValue(TEST_PASSED);
+        double errors = getValue(TESTS_ERRS);
         double rate = tests + errors == 0 ? 0 : 1.0 - errors / (errors + tests);
-        transactionData.put(Columns.PASS_RATE, (Number) new Double(rate));
+        setValue(PASS_RATE, rate);
     }
 
 }
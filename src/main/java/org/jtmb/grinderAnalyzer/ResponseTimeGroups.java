@@ -0,0 +1,66 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+/**
+ * The passed tests of every transaction of a bucket store, counted in the
+ * response time groups of response_time_thresholds.  A test is in the first
+ * group whose maximum time is larger than its response time; the last group
+ * takes the remaining tests.
+ * 
+ * The groups are counted by the bucket store as the lines are read, with a
+ * binary search over the group limits, so dozens of thresholds cost no more
+ * than a few.
+ */
+public class ResponseTimeGroups {
+
+    private final int groupCount;
+    private final long[] counts; // ordinal * groupCount + group
+
+    /**
+     * @param store
+     *            a store that counts response time groups, see
+     *            {@link BucketStore#hasResponseTimeGroups()}
+     */
+    public ResponseTimeGroups(BucketStore store) {
+        int size = store.getOrdinals().size();
+        groupCount = store.getResponseTimeGroupLimits().length + 1;
+        counts = new long[size * groupCount];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            long[] groups = store.getResponseTimeGroups(ordinal);
+            System.arraycopy(groups, 0, counts, ordinal * groupCount, groupCount);
+        }
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    /**
+     * @param ordinal
+     *            a transaction of the store, see {@link TransactionOrdinals}
+     * @return the number of passed tests of the transaction in the group
+     */
+    public long getCount(int ordinal, int group) {
+        return counts[ordinal * groupCount + group];
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the lines of a file backwards, starting with the last one.  The file
+ * is read through a FileChannel in fixed-size blocks, from the end towards
+ * the start, so only a few reads are needed per block of lines.
+ * 
+ * Lines may end with LF or CRLF; the line terminators are not part of the
+ * returned lines.  Bytes are decoded as ISO-8859-1, so every byte maps to
+ * exactly one character, as when Jython reads a file.
+ */
+public class ReverseLineReader {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    private static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer block;
+    private long blockStart;   // file offset of the first byte in block
+    private int position;      // bytes of the block not yet returned
+    private boolean atStart = false;
+
+    // the line being built, filled from the end of the array
+    private byte[] line = new byte[256];
+
+    public ReverseLineReader(String fileName) throws IOException {
+        this(fileName, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ReverseLineReader(String fileName, int blockSize) throws IOException {
+        file = new RandomAccessFile(fileName, "r");
+        channel = file.getChannel();
+        block = ByteBuffer.allocate(blockSize);
+        blockStart = channel.size();
+        position = 0;
+        if (blockStart == 0) {
+            atStart = true;
+        } else if (previousByte() != '\n') {
+            // the last line has no terminator
+            position++;
+        }
+    }
+
+    /**
+     * @return the line before the one returned last, or null when the start
+     *         of the file has been reached
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        if (atStart) {
+            return null;
+        }
+        int start = line.length;
+        while (true) {
+            if (position == 0 && blockStart == 0) {
+                atStart = true;
+                break;
+            }
+            byte b = previousByte();
+            if (b == '\n') {
+                break;
+            }
+            if (start == 0) {
+                byte[] larger = new byte[line.length * 2];
+                System.arraycopy(line, 0, larger, line.length, line.length);
+                start = line.length;
+                line = larger;
+            }
+            line[--start] = b;
+        }
+        int end = line.length;
+        if (end > start && line[end - 1] == '\r') {
+            end--;
+        }
+        return new String(line, start, end - start, CHARSET);
+    }
+
+    private byte previousByte() throws IOException {
+        if (position == 0) {
+            int size = (int) Math.min(block.capacity(), blockStart);
+            blockStart -= size;
+            block.clear();
+            block.limit(size);
+            while (block.hasRemaining()) {
+                if (channel.read(block, blockStart + block.position()) < 0) {
+                    throw new IOException("File truncated while reading backwards");
+                }
+            }
+            position = size;
+        }
+        return block.get(--position);
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+}
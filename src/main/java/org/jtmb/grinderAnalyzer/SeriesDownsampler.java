@@ -0,0 +1,102 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+/**
+ * Reduces chart series to about as many points as the chart is wide, so
+ * fine buckets cost nothing at render time.
+ * 
+ * The points are picked with Largest-Triangle-Three-Buckets (Steinarsson,
+ * "Downsampling Time Series for Visual Representation", 2013): the first
+ * and last points are kept, the rest are split into equal groups, and from
+ * every group the point that makes the largest triangle with the point
+ * picked before it and the mean of the next group is kept.  Unlike
+ * averaging, this keeps the peaks and dips that stand out in a chart.
+ */
+public class SeriesDownsampler {
+
+    private SeriesDownsampler() {
+    }
+
+    /**
+     * @param x
+     *            ascending
+     * @param y
+     * @param threshold
+     *            the number of points to keep, at least 3
+     * @return the indices of the points kept, ascending; all of them if there
+     *         are no more than threshold
+     */
+    public static int[] largestTriangleThreeBuckets(double[] x, double[] y, int threshold) {
+        int length = x.length;
+        if (threshold >= length || threshold < 3) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] kept = new int[threshold];
+        double every = (double) (length - 2) / (threshold - 2);
+        int a = 0; // the point picked last
+        for (int group = 0; group < threshold - 2; group++) {
+            // the mean of the next group
+            int nextStart = (int) ((group + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((group + 2) * every) + 1, length);
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                meanX += x[i];
+                meanY += y[i];
+            }
+            meanX /= nextEnd - nextStart;
+            meanY /= nextEnd - nextStart;
+            // the point of this group with the largest triangle
+            int start = (int) (group * every) + 1;
+            int end = (int) ((group + 1) * every) + 1;
+            double maxArea = -1;
+            int picked = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((x[a] - meanX) * (y[i] - y[a]) - (x[a] - x[i]) * (meanY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    picked = i;
+                }
+            }
+            kept[group + 1] = picked;
+            a = picked;
+        }
+        kept[threshold - 1] = length - 1;
+        return kept;
+    }
+
+    /**
+     * @return the values at the indices
+     */
+    public static double[] select(double[] values, int[] indices) {
+        double[] selected = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            selected[i] = values[indices[i]];
+        }
+        return selected;
+    }
+}
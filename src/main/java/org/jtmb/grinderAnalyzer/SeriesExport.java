@@ -0,0 +1,245 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The series of a report's graphs, written to a single file for the report
+ * page to draw in the browser (templates/charts.js) instead of .png files.
+ * 
+ * Each series keeps the points its .png graph would have, picked by
+ * {@link SeriesDownsampler}.  The points are stored as integers: x as bucket
+ * indices and y as the value times the scale of the series, each as the
+ * difference to the previous point.  x is left out when every bucket is
+ * kept.  The JSON is wrapped in a call to loadSeries(), so that the page can
+ * read it with a script tag when opened from disk.
+ */
+public class SeriesExport {
+
+    public static final String FILE_NAME = "series.js";
+
+    private static final int VERSION = 1;
+    private static final double RATE_SCALE = 100; // 0.01 per second
+    private static final double TIME_SCALE = 10000; // 0.1 ms
+
+    private final Configuration config;
+    private final boolean http;
+    private final StringBuilder transactions = new StringBuilder();
+    private final double[] percentiles;
+    private boolean heatmaps = false;
+
+    /**
+     * @param config
+     * @param http
+     *            true to add the bandwidth and the HTTP response time series
+     */
+    public SeriesExport(Configuration config, boolean http) {
+        this.config = config;
+        this.http = http;
+        this.percentiles = config.isShowPercentiles() ? config.getPercentiles() : new double[0];
+    }
+
+    /**
+     * Adds the series of a transaction.
+     * 
+     * @param name
+     *            the transaction name, "All Transactions" for the totals
+     * @param store
+     * @param ordinal
+     *            the transaction in the store
+     */
+    public void addTransaction(String name, BucketStore store, int ordinal) {
+        StringBuilder json = transactions;
+        if (json.length() > 0) {
+            json.append(',');
+        }
+        double[] times = store.getBucketStartTimes();
+        int tpsWidth = config.getTpsChartWidth();
+        int rtWidth = config.getRtChartWidth();
+        double[] meanResponseTimes = store.getMeanResponseTime(ordinal);
+        DashboardServer.appendString(json, ReportRow.getSafeName(name));
+        json.append(":{\"name\":");
+        DashboardServer.appendString(json, name);
+        appendSeries(json, "passed", times, store.getTxSecPassed(ordinal), tpsWidth, RATE_SCALE);
+        appendSeries(json, "failed", times, store.getTxSecFailed(ordinal), tpsWidth, RATE_SCALE);
+        appendSeries(json, "mean", times, meanResponseTimes, Math.max(tpsWidth, rtWidth), TIME_SCALE);
+        appendSeries(json, "max", times, store.getMaxResponseTime(ordinal), rtWidth, TIME_SCALE);
+        json.append(",\"percentiles\":[");
+        if (store.hasPercentilesOverTime()) {
+            for (int i = 0; i < percentiles.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                double[] values = store.getPercentileResponseTimes(ordinal, percentiles[i]);
+                appendSeries(json, times, values, SeriesDownsampler.largestTriangleThreeBuckets(times, values, rtWidth),
+                        TIME_SCALE);
+            }
+        }
+        json.append(']');
+        if (http) {
+            appendSeries(json, "kbSec", times, store.getThroughputKBSec(ordinal), config.getBwChartWidth(),
+                    RATE_SCALE);
+            // the stacked series share the points picked for their sum
+            int[] indices = SeriesDownsampler.largestTriangleThreeBuckets(times, meanResponseTimes, rtWidth);
+            json.append(",\"resolveHost\":");
+            appendSeries(json, times, store.getMeanResolveHostTime(ordinal), indices, TIME_SCALE);
+            json.append(",\"connect\":");
+            appendSeries(json, times, store.getMeanConnectTime(ordinal), indices, TIME_SCALE);
+            json.append(",\"firstByte\":");
+            appendSeries(json, times, store.getMeanFirstByteTime(ordinal), indices, TIME_SCALE);
+            json.append(",\"complete\":");
+            appendSeries(json, times, store.getMeanFinishTime(ordinal), indices, TIME_SCALE);
+        }
+        if (config.isShowHeatmap() && store.hasPercentilesOverTime()) {
+            json.append(",\"heatmap\":");
+            appendHeatmap(json, new LatencyHeatmap(store, ordinal, rtWidth));
+            heatmaps = true;
+        }
+        json.append('}');
+    }
+
+    /**
+     * Writes the series added so far to FILE_NAME in the report directory.
+     * 
+     * @param reportDir
+     * @param store
+     *            the store of the transactions, for the bucket width
+     * @throws IOException
+     */
+    public void write(String reportDir, BucketStore store) throws IOException {
+        StringBuilder json = new StringBuilder("loadSeries(");
+        json.append("{\"version\":").append(VERSION);
+        json.append(",\"msPerBucket\":").append(store.getMsPerBucket());
+        json.append(",\"http\":").append(http);
+        json.append(",\"date\":");
+        // as in the graphs, grinder 3.0 logs have no absolute times
+        long startTime = store.getStartTime();
+        if (config.isShowDate() && startTime > 1000000000000L) {
+            DashboardServer.appendString(json, new SimpleDateFormat(config.getDateFormat()).format(new Date(startTime)));
+        } else {
+            json.append("null");
+        }
+        json.append(",\"sizes\":{");
+        appendSize(json, "perf", config.getTpsChartWidth(), config.getTpsChartHeight());
+        json.append(',');
+        appendSize(json, "meanMax_rtime", config.getRtChartWidth(), config.getRtChartHeight());
+        json.append(',');
+        appendSize(json, "bandwidth", config.getBwChartWidth(), config.getBwChartHeight());
+        json.append(',');
+        appendSize(json, "rtime", config.getRtChartWidth(), config.getRtChartHeight());
+        if (heatmaps) {
+            json.append(',');
+            appendSize(json, "heatmap", config.getRtChartWidth(), config.getRtChartHeight());
+        }
+        json.append('}');
+        json.append(",\"weights\":[").append(config.getTpsWeight()).append(',')
+                .append(config.getResponseTimeWeight()).append(']');
+        json.append(",\"percentiles\":[");
+        for (int i = 0; i < percentiles.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            DashboardServer.appendString(json, Columns.getPercentileLabel(percentiles[i]));
+        }
+        json.append("],\"transactions\":{").append(transactions).append("}});\n");
+        OutputStream out = new FileOutputStream(new File(reportDir, FILE_NAME));
+        try {
+            out.write(DashboardServer.toBytes(json.toString()));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The cells are numbered column by column, from the first to the last
+     * row; their numbers are delta-encoded.
+     */
+    private static void appendHeatmap(StringBuilder json, LatencyHeatmap heatmap) {
+        int rows = heatmap.getLastRow() - heatmap.getFirstRow() + 1;
+        json.append("{\"columnSeconds\":").append(heatmap.getColumnSeconds());
+        json.append(",\"firstRow\":").append(heatmap.getFirstRow());
+        json.append(",\"lastRow\":").append(heatmap.getLastRow());
+        json.append(",\"cells\":[");
+        long previous = 0;
+        for (int cell = 0; cell < heatmap.getCellCount(); cell++) {
+            if (cell > 0) {
+                json.append(',');
+            }
+            long number = (long) heatmap.getColumn(cell) * rows + heatmap.getRow(cell) - heatmap.getFirstRow();
+            json.append(number - previous);
+            previous = number;
+        }
+        json.append("],\"counts\":[");
+        for (int cell = 0; cell < heatmap.getCellCount(); cell++) {
+            if (cell > 0) {
+                json.append(',');
+            }
+            json.append(heatmap.getCount(cell));
+        }
+        json.append("]}");
+    }
+
+    private static void appendSize(StringBuilder json, String chart, int width, int height) {
+        json.append('"').append(chart).append("\":[").append(width).append(',').append(height).append(']');
+    }
+
+    private static void appendSeries(StringBuilder json, String key, double[] times, double[] values, int points,
+            double scale) {
+        json.append(",\"").append(key).append("\":");
+        appendSeries(json, times, values, SeriesDownsampler.largestTriangleThreeBuckets(times, values, points), scale);
+    }
+
+    private static void appendSeries(StringBuilder json, double[] times, double[] values, int[] indices,
+            double scale) {
+        json.append("{\"scale\":").append((long) scale);
+        if (indices.length < times.length) {
+            json.append(",\"x\":[");
+            int previous = 0;
+            for (int i = 0; i < indices.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(indices[i] - previous);
+                previous = indices[i];
+            }
+            json.append(']');
+        }
+        json.append(",\"y\":[");
+        long previous = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            double value = values[indices[i]];
+            long scaled = Double.isNaN(value) || Double.isInfinite(value) ? 0 : Math.round(value * scale);
+            json.append(scaled - previous);
+            previous = scaled;
+        }
+        json.append("]}");
+    }
+}
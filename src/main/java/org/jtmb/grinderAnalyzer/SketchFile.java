@@ -0,0 +1,204 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.log4j.Logger;
+
+/**
+ * The analysis of the logs of one load generator, in a form that can be
+ * merged with those of the other load generators of a test.
+ * 
+ * A sketch is a gzipped {@link BucketStore} with the names of its tests.
+ * Its latency histograms, per transaction for the whole test and, when
+ * show_percentiles and histogram_bucket_digits are set, per transaction in
+ * every bucket, and its response time group counts add up exactly.  So the
+ * percentiles and response time groups of merged sketches are those of all
+ * the logs together.  They are as
+ * precise as a single analysis, at the cost of a few KB per load generator
+ * rather than the data_ files themselves.  The summary rows of a merged
+ * sketch are computed from its counters (see
+ * {@link ReportRow#setFromStore(BucketStore, int)}).
+ */
+public class SketchFile {
+
+    public static final String SUFFIX = ".gasketch";
+
+    private static final int MAGIC = 0x47415331; // "GAS1"
+    private static final int FORMAT_VERSION = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BucketStore store;
+    private final Map<Integer, String> testNames; // test number -> name
+    private final boolean http;
+    private static final Logger logger = Logger.getLogger(SketchFile.class);
+
+    /**
+     * @param store
+     * @param testNumbers
+     * @param testNames
+     *            the name of every test, in the order of testNumbers
+     * @param http
+     *            true if the data_ files have the HTTP columns
+     */
+    public SketchFile(BucketStore store, int[] testNumbers, String[] testNames, boolean http) {
+        this.store = store;
+        this.testNames = new TreeMap<Integer, String>();
+        for (int i = 0; i < testNumbers.length; i++) {
+            this.testNames.put(testNumbers[i], testNames[i]);
+        }
+        this.http = http;
+    }
+
+    private SketchFile(BucketStore store, Map<Integer, String> testNames, boolean http) {
+        this.store = store;
+        this.testNames = testNames;
+        this.http = http;
+    }
+
+    public BucketStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return the numbers of the named tests, ascending
+     */
+    public int[] getTestNumbers() {
+        int[] numbers = new int[testNames.size()];
+        int i = 0;
+        for (int testNumber : testNames.keySet()) {
+            numbers[i++] = testNumber;
+        }
+        return numbers;
+    }
+
+    public String getTestName(int testNumber) {
+        return testNames.get(testNumber);
+    }
+
+    public boolean isHTTP() {
+        return http;
+    }
+
+    public void write(String fileName) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                new FileOutputStream(fileName), BUFFER_SIZE)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeBoolean(http);
+            out.writeInt(testNames.size());
+            for (Map.Entry<Integer, String> entry : testNames.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            store.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static SketchFile read(String fileName) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                new FileInputStream(fileName), BUFFER_SIZE)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(fileName + " is not a sketch of this version");
+            }
+            boolean http = in.readBoolean();
+            int count = in.readInt();
+            Map<Integer, String> testNames = new TreeMap<Integer, String>();
+            for (int i = 0; i < count; i++) {
+                int testNumber = in.readInt();
+                testNames.put(testNumber, in.readUTF());
+            }
+            return new SketchFile(BucketStore.read(in), testNames, http);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Merges sketch files into one sketch with the configured number of
+     * buckets.  The sketches must have whole test histograms of the same
+     * precision; the per bucket histograms are kept if every sketch has
+     * them with the same precision, and the response time groups if every
+     * sketch counted the configured ones.  When sketches name a test
+     * differently the first name wins.
+     * 
+     * @throws IOException
+     *             if a sketch cannot be read or the sketches do not match
+     */
+    public static SketchFile merge(String[] fileNames, Configuration config) throws IOException {
+        SketchFile[] sketches = new SketchFile[fileNames.length];
+        Map<Integer, String> testNames = new TreeMap<Integer, String>();
+        boolean http = false;
+        boolean perTransaction = true;
+        int histogramDigits = -1;
+        int bucketHistogramDigits = -1;
+        long[] groupLimits = config.getRtimeThresholdMs();
+        for (int i = 0; i < fileNames.length; i++) {
+            logger.info("    Reading sketch " + fileNames[i]);
+            SketchFile sketch = read(fileNames[i]);
+            sketches[i] = sketch;
+            for (Map.Entry<Integer, String> entry : sketch.testNames.entrySet()) {
+                if (!testNames.containsKey(entry.getKey())) {
+                    testNames.put(entry.getKey(), entry.getValue());
+                }
+            }
+            http |= sketch.http;
+            perTransaction &= sketch.store.isPerTransaction();
+            if (histogramDigits == -1) {
+                histogramDigits = sketch.store.getHistogramDigits();
+                bucketHistogramDigits = sketch.store.getBucketHistogramDigits();
+            } else if (histogramDigits != sketch.store.getHistogramDigits()) {
+                throw new IOException(fileNames[i] + " has histograms of another precision (histogram_digits)");
+            } else if (bucketHistogramDigits != sketch.store.getBucketHistogramDigits()) {
+                bucketHistogramDigits = 0;
+            }
+            if (groupLimits != null && !Arrays.equals(groupLimits, sketch.store.getResponseTimeGroupLimits())) {
+                logger.warn("    " + fileNames[i] + " has other response time groups, they are left out");
+                groupLimits = null;
+            }
+        }
+        SketchFile merged = new SketchFile(null, testNames, http);
+        BucketStore store = new BucketStore(new TransactionOrdinals(merged.getTestNumbers()), config.getBuckets(),
+                perTransaction && config.isShowTransactionData(),
+                histogramDigits <= 0 ? null : new LatencyHistogram(histogramDigits),
+                bucketHistogramDigits <= 0 ? null : new LatencyHistogram(bucketHistogramDigits), groupLimits);
+        for (SketchFile sketch : sketches) {
+            store.merge(sketch.store);
+        }
+        return new SketchFile(store, testNames, http);
+    }
+}
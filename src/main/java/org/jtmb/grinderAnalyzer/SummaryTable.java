@@ -0,0 +1,323 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.log4j.Logger;
+
+/**
+ * The final statistics table at the end of a grinder out_ file, as report
+ * rows.  The table is found by reading the file backwards, and its columns
+ * are told apart by the names in its header, so every grinder version that
+ * writes the usual column names is read alike:
+ * 
+ * <pre>
+ *              Tests        Errors       Mean Test    Test Time    TPS      ...
+ *                                        Time (ms)    Standard              ...
+ *                                                     Deviation             ...
+ *                                                     (ms)                  ...
+ * 
+ * Test 1       1950         36           207.05       103.53       6.50     ... "Home page"
+ * Totals       5895         105          250.62       125.31       19.65    ...
+ * </pre>
+ * 
+ * The header cells are as wide as the row labels.  Tables without a header
+ * are read by the number of their columns, as laid out by grinder 3.0 to 3.7.
+ */
+public class SummaryTable {
+
+    public static final String MARKER = "Final statistics for this process";
+    private static final String TOTALS = "Totals";
+
+    // normalized header -> report column
+    private static final Map<String, String> HEADERS = new HashMap<String, String>();
+    static {
+        HEADERS.put("tests", Columns.TEST_PASSED);
+        HEADERS.put("errors", Columns.TESTS_ERRS);
+        HEADERS.put("mean test time (ms)", Columns.RTIME);
+        HEADERS.put("test time standard deviation (ms)", Columns.RTIME_STD_DEV);
+        HEADERS.put("tps", Columns.TPS);
+        HEADERS.put("mean response length", Columns.RESPONSE_LEN);
+        HEADERS.put("response bytes per second", Columns.BYTES_PERSEC);
+        HEADERS.put("response errors", Columns.RESPONSE_ERRORS);
+        HEADERS.put("mean time to resolve host", Columns.RESOLVE_HOST);
+        HEADERS.put("mean time to establish connection", Columns.CONNECT);
+        HEADERS.put("mean time to first byte", Columns.FIRST_BYTE);
+    }
+
+    // the columns of tables without a header, by their number of columns
+    private static final String[] NON_HTTP_LEGACY = { Columns.TEST_PASSED, Columns.TESTS_ERRS, Columns.RTIME,
+            Columns.RTIME_STD_DEV };
+    private static final String[] NON_HTTP = { Columns.TEST_PASSED, Columns.TESTS_ERRS, Columns.RTIME,
+            Columns.RTIME_STD_DEV, Columns.TPS };
+    private static final String[] HTTP_LEGACY = { Columns.TEST_PASSED, Columns.TESTS_ERRS, Columns.RTIME,
+            Columns.RTIME_STD_DEV, Columns.RESPONSE_LEN, Columns.BYTES_PERSEC, Columns.RESPONSE_ERRORS,
+            Columns.RESOLVE_HOST, Columns.CONNECT, Columns.FIRST_BYTE };
+    private static final String[] HTTP = { Columns.TEST_PASSED, Columns.TESTS_ERRS, Columns.RTIME,
+            Columns.RTIME_STD_DEV, Columns.TPS, Columns.RESPONSE_LEN, Columns.BYTES_PERSEC,
+            Columns.RESPONSE_ERRORS, Columns.RESOLVE_HOST, Columns.CONNECT, Columns.FIRST_BYTE };
+
+    private final Map<Integer, String> testNames = new TreeMap<Integer, String>();
+    private final List<ReportRow> rows = new ArrayList<ReportRow>();
+    private ReportRow totalsRow = null;
+    private boolean http = false;
+    private static final Logger logger = Logger.getLogger(SummaryTable.class);
+
+    private SummaryTable() {
+    }
+
+    /**
+     * Reads the last table of an out_ file, which may be compressed (see
+     * {@link LogFiles}).  Tests with the same name are told apart by their
+     * number: "name_number".
+     * 
+     * @return the table, empty if the file has none
+     */
+    public static SummaryTable read(String outFile, Configuration config) throws IOException {
+        SummaryTable table = new SummaryTable();
+        table.parse(readTableLines(outFile), config);
+        return table;
+    }
+
+    /**
+     * @return the lines after the last marker, in file order
+     */
+    private static List<String> readTableLines(String outFile) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        if (LogFiles.isCompressed(outFile)) {
+            // can only be read forwards: keep what follows the last marker
+            LogFiles.LineReader reader = new LogFiles.LineReader(LogFiles.open(outFile));
+            try {
+                boolean found = false;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.indexOf(MARKER) >= 0) {
+                        lines.clear();
+                        found = true;
+                    } else if (found) {
+                        lines.add(line);
+                    }
+                }
+                if (!found) {
+                    lines.clear();
+                }
+            } finally {
+                reader.close();
+            }
+            return lines;
+        }
+        ReverseLineReader reader = new ReverseLineReader(outFile);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.indexOf(MARKER) >= 0) {
+                    Collections.reverse(lines);
+                    return lines;
+                }
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return new ArrayList<String>();
+    }
+
+    private void parse(List<String> lines, Configuration config) {
+        List<String> header = new ArrayList<String>();
+        List<String> rowLines = new ArrayList<String>();
+        for (String line : lines) {
+            if (isRow(line)) {
+                rowLines.add(line);
+            } else if (rowLines.isEmpty() && line.trim().length() > 0) {
+                header.add(line);
+            }
+        }
+        if (rowLines.isEmpty()) {
+            return;
+        }
+        String[] columns = getColumns(header, rowLines.get(0));
+        Map<String, Integer> nameCounts = new HashMap<String, Integer>();
+        for (String line : rowLines) {
+            String name = getName(line);
+            if (name != null) {
+                Integer count = nameCounts.get(name);
+                nameCounts.put(name, count == null ? 1 : count + 1);
+            }
+        }
+        for (String line : rowLines) {
+            ReportRow row = new ReportRow(config);
+            String[] values = getValues(line);
+            for (int i = 0; i < columns.length && i < values.length; i++) {
+                if (columns[i] != null) {
+                    row.setColumnData(columns[i], values[i]);
+                }
+            }
+            row.calculatePassRate();
+            if (line.startsWith(TOTALS)) {
+                row.setTxName(TOTALS);
+                totalsRow = row;
+            } else {
+                int testNumber = Integer.parseInt(line.trim().split("\\s+")[1]);
+                String name = getName(line);
+                if (nameCounts.get(name) > 1) {
+                    name = name + "_" + testNumber;
+                }
+                row.setTxName(name);
+                testNames.put(testNumber, name);
+                rows.add(row);
+            }
+        }
+    }
+
+    private static boolean isRow(String line) {
+        return line.startsWith("Test ") || line.startsWith("(Test ") || line.startsWith(TOTALS);
+    }
+
+    /**
+     * @return the test name, which is in quotes
+     */
+    private static String getName(String line) {
+        int start = line.indexOf('"');
+        int end = line.indexOf('"', start + 1);
+        return start < 0 || end < 0 ? null : line.substring(start + 1, end);
+    }
+
+    /**
+     * @return the numbers of a row, after its label and before its name
+     */
+    private static String[] getValues(String line) {
+        int end = line.indexOf('"');
+        String[] words = (end < 0 ? line : line.substring(0, end)).trim().split("\\s+");
+        int label = words[0].equals(TOTALS) ? 1 : 2;
+        String[] values = new String[Math.max(0, words.length - label)];
+        System.arraycopy(words, label, values, 0, values.length);
+        return values;
+    }
+
+    /**
+     * @return the report column of every value of a row, null for the
+     *         columns that are not reported
+     */
+    private String[] getColumns(List<String> header, String firstRow) {
+        int count = getValues(firstRow).length;
+        // the label cell ends where the first value starts
+        String label = firstRow.startsWith(TOTALS) ? TOTALS : firstRow.substring(0, firstRow.indexOf(' ',
+                firstRow.indexOf(' ') + 1));
+        int width = label.length();
+        while (width < firstRow.length() && firstRow.charAt(width) == ' ') {
+            width++;
+        }
+        String[] columns = new String[count];
+        int known = 0;
+        for (int i = 0; i < count && !header.isEmpty(); i++) {
+            StringBuffer name = new StringBuffer();
+            for (String line : header) {
+                int start = width * (i + 1);
+                if (start < line.length()) {
+                    String cell = line.substring(start, Math.min(line.length(), start + width)).trim();
+                    if (cell.length() > 0) {
+                        name.append(name.length() > 0 ? " " : "").append(cell);
+                    }
+                }
+            }
+            columns[i] = HEADERS.get(name.toString().toLowerCase().replaceAll("\\s+", " "));
+            if (columns[i] != null) {
+                known++;
+            } else {
+                logger.debug("Summary column '" + name + "' is not reported");
+            }
+        }
+        if (known == 0) {
+            columns = getLegacyColumns(count);
+        }
+        for (String column : columns) {
+            if (Columns.RESPONSE_LEN.equals(column)) {
+                http = true;
+            }
+        }
+        return columns;
+    }
+
+    private static String[] getLegacyColumns(int count) {
+        String[][] layouts = { NON_HTTP_LEGACY, NON_HTTP, HTTP_LEGACY, HTTP };
+        for (String[] layout : layouts) {
+            if (layout.length == count) {
+                return layout;
+            }
+        }
+        logger.warn("Unknown summary table with " + count + " columns; reading the first "
+                + NON_HTTP_LEGACY.length + " only");
+        String[] columns = new String[count];
+        System.arraycopy(NON_HTTP_LEGACY, 0, columns, 0, Math.min(count, NON_HTTP_LEGACY.length));
+        return columns;
+    }
+
+    /**
+     * @return true if the table has neither tests nor totals
+     */
+    public boolean isEmpty() {
+        return rows.isEmpty() && totalsRow == null;
+    }
+
+    /**
+     * @return true if the table has the columns of HTTP tests
+     */
+    public boolean isHTTP() {
+        return http;
+    }
+
+    /**
+     * @return the test numbers, ascending
+     */
+    public int[] getTestNumbers() {
+        int[] numbers = new int[testNames.size()];
+        int i = 0;
+        for (int testNumber : testNames.keySet()) {
+            numbers[i++] = testNumber;
+        }
+        return numbers;
+    }
+
+    public String getTestName(int testNumber) {
+        return testNames.get(testNumber);
+    }
+
+    /**
+     * @return the rows of the tests, in table order
+     */
+    public List<ReportRow> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the totals row, or null if the table has none
+     */
+    public ReportRow getTotalsRow() {
+        return totalsRow;
+    }
+}
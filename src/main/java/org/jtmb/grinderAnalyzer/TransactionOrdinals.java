@@ -0,0 +1,98 @@
+/*
+ Copyright (C) 2007-2011, Travis Bear
+ All rights reserved.
+
+ This file is part of Grinder Analyzer.
+
+ Grinder Analyzer is free software; you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation; either version 2 of the License, or
+ (at your option) any later version.
+
+ Grinder Analyzer is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Grinder Analyzer; if not, write to the Free Software
+ Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.jtmb.grinderAnalyzer;
+
+import java.util.Arrays;
+
+/**
+ * Maps grinder test numbers to dense ordinals, so per-transaction data can
+ * be kept in flat arrays.  Ordinal 0 is reserved for all transactions
+ * combined; the tests get ordinals 1 to n in ascending test number order.
+ * 
+ * Instances are immutable and may be shared between threads.
+ */
+public class TransactionOrdinals {
+
+    public static final int ALL_TRANSACTIONS = 0;
+    public static final int UNKNOWN = -1;
+
+    // test numbers up to this value are looked up in a direct table
+    private static final int MAX_TABLE_SIZE = 1 << 20;
+
+    private final int[] testNumbers; // sorted
+    private final int[] table;       // test number -> ordinal, or null
+
+    public TransactionOrdinals(int[] testNumbers) {
+        int[] sorted = testNumbers.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        this.testNumbers = Arrays.copyOf(sorted, distinct);
+        if (distinct > 0 && this.testNumbers[0] >= 0 && this.testNumbers[distinct - 1] < MAX_TABLE_SIZE) {
+            table = new int[this.testNumbers[distinct - 1] + 1];
+            Arrays.fill(table, UNKNOWN);
+            for (int i = 0; i < distinct; i++) {
+                table[this.testNumbers[i]] = i + 1;
+            }
+        } else {
+            table = null;
+        }
+    }
+
+    /**
+     * @param testNumber
+     * @return the ordinal of the test, or UNKNOWN
+     */
+    public int getOrdinal(int testNumber) {
+        if (table != null) {
+            return testNumber >= 0 && testNumber < table.length ? table[testNumber] : UNKNOWN;
+        }
+        int index = Arrays.binarySearch(testNumbers, testNumber);
+        return index < 0 ? UNKNOWN : index + 1;
+    }
+
+    /**
+     * @param ordinal
+     * @return the test number for a (non-zero) ordinal
+     */
+    public int getTestNumber(int ordinal) {
+        return testNumbers[ordinal - 1];
+    }
+
+    /**
+     * @return the test numbers, in ordinal order
+     */
+    public int[] getTestNumbers() {
+        return testNumbers.clone();
+    }
+
+    /**
+     * @return the number of ordinals, including the all transactions ordinal
+     */
+    public int size() {
+        return testNumbers.length + 1;
+    }
+}
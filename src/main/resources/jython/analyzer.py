@@ -39,22 +39,39 @@ from org.jfree.data.xy import XYSeries
 
 from org.jfree.chart.title import TextTitle
 
+from java.net import InetAddress
+from java.net import UnknownHostException
+
 from org.jtmb.grinderAnalyzer import ReportRow ###
 from org.jtmb.grinderAnalyzer import Columns
+from org.jtmb.grinderAnalyzer import BucketStore
+from org.jtmb.grinderAnalyzer import BucketStoreCache
+from org.jtmb.grinderAnalyzer import ChartRenderer
+from org.jtmb.grinderAnalyzer import DashboardServer
+from org.jtmb.grinderAnalyzer import ErrorLogIndex
+from org.jtmb.grinderAnalyzer import LatencyHeatmap
+from org.jtmb.grinderAnalyzer import LogFollower
+from org.jtmb.grinderAnalyzer import ResponseTimeGroups
+from org.jtmb.grinderAnalyzer import SeriesDownsampler
+from org.jtmb.grinderAnalyzer import SeriesExport
+from org.jtmb.grinderAnalyzer import SketchFile
+from org.jtmb.grinderAnalyzer import SummaryTable
+from org.jtmb.grinderAnalyzer import TransactionOrdinals
 
 # python imports
 
+import jarray
 import os
 import re
+import sys
+import time
 
 import os.path as p
 
 # Jython / analyzer imports
-from ga.fileutils import tail
-from ga.fileutils import reverseSeek
+from ga.fileutils import contains
 import ga.graph
 import ga.report
-import ga.bucket
 import ga.constants
 
 
@@ -63,116 +80,82 @@ import ga.constants
 # Manages the response time groups that were defined in config
 #####################################################################
 class ResponseTimeGroupHandler:
-    _responseTimeGroups = {}
     '''
-    key: transaction name
-    value: dictionary
-             key: max response time in this group in seconds (float).  If there
-                  is no key lower than this one, the smallest response time in
-                  this group is zero; otherwise it's the value of the next
-                  lowest key.
-             value: count (int) for times in this range.
+    Adds the response time groups of response_time_thresholds to the report
+    rows.  The groups are counted by the bucket store as the data_ lines
+    are read, and handed over by the java ResponseTimeGroups.
 
     '''
     _txNumberNameMap = None # key: tx num, value: tx name
-    _totalTxPassed = -1     # total for all transactions
-    _totalTxPassMap = None  # key: tx name
-                            # value: total passed tx's for all response time values
-    _testNumColumn = ""
+    _groups = None          # ResponseTimeGroups
+    _ordinals = None        # TransactionOrdinals of the counted store
     
     def __init__(self, txNumNameMap):
-        self._totalTxPassed = 0
         self._txNumberNameMap = txNumNameMap
-        self._responseTimeGroups = {}
-        self._totalTxPassMap = {}
-        for txName in txNumNameMap.values():
-            logger.debug("Creating timing group for %s" %txName)
-            self._totalTxPassMap[txName] = 0
-            _timeCountMap={}
-            for maxTime in CONFIG.rtimeThresholds:
-                _timeCountMap[maxTime] = 0
-            self._responseTimeGroups[txName] = _timeCountMap
 
     def addRTGroupsToReport(self, analyzerPlugin):
         """
         The analyzer plugin has previously been set up with the summary data
         at the end of the grinder out_ file.  Here, we add the additional
         time group info to the existing report rows.
+
+        The groups must be counted over the same data files as the report
+        rows: those of a single process, or of every process.
         
         """
-        transactionNames=self._responseTimeGroups.keys()
+        if self._groups == None:
+            return
         rtgroupNames = analyzerPlugin.getRtgroupColumnNames()
         logger.debug("--- %s" %rtgroupNames)
-        logger.debug("KEYS %s" %transactionNames)
-        reportRow = None
-        for txName in transactionNames:
-            if txName.strip() == ALL_TRANSACTIONS_VALUE:
+        for txNum, txName in self._txNumberNameMap.items():
+            if txNum == ALL_TRANSACTIONS_KEY:
                 reportRow=analyzerPlugin.getTotalsRow()
             else:
                 reportRow=analyzerPlugin.getRow(txName)
+            ordinal = self._getOrdinal(txNum)
+            if reportRow == None or ordinal == TransactionOrdinals.UNKNOWN:
+                # transaction not run by this process
+                continue
             logger.debug ("Adding '%s' data to row %s" %(txName, reportRow))
-            timeGroups = self._responseTimeGroups[txName].keys()
-            timeGroups.sort()
-            logger.debug("Time groups: %s" %timeGroups)
-            rtColumnIndex = 0
-            for maxTime in timeGroups:
-                groupMembers = float(self._responseTimeGroups[txName][maxTime])
-                # catch the case where a non-decimal character in the summary causes
-                # reportRow to return 0
+            # catch the case where a non-decimal character in the summary causes
+            # reportRow to return 0
+            tests = float(reportRow.getColumnDataAsNum(Columns.TEST_PASSED))
+            for group in range(self._groups.getGroupCount()):
                 percent = -1.0
-                tests = float(reportRow.getColumnDataAsNum(Columns.TEST_PASSED))
                 if tests > 0:
-                    percent=groupMembers/(tests * getAgentCount())
-                    logger.debug("Group members: %d, tests: %d" %(groupMembers, tests))
-                #logger.info("Max time: %f, members: %s, percent float: %d" %(maxTime, groupMembers, percent))
-                logger.debug("adding tx name: %s, rt group: %s, percent, %s" %(txName, rtgroupNames[rtColumnIndex], str(percent)))
-                reportRow.addNumericTransactionData(rtgroupNames[rtColumnIndex], percent)
-                rtColumnIndex += 1
-            if txName.strip() == ALL_TRANSACTIONS_VALUE:
+                    percent = self._groups.getCount(ordinal, group) / tests
+                logger.debug("adding tx name: %s, rt group: %s, percent, %s" %(txName, rtgroupNames[group], str(percent)))
+                reportRow.addNumericTransactionData(rtgroupNames[group], percent)
+            if txNum == ALL_TRANSACTIONS_KEY:
                 analyzerPlugin.setTotalsRow(reportRow)
             else:
                 analyzerPlugin.updateRow(txName, reportRow)
 
-
-    def __getKey__(self, rtime):
-        """
-        For a given response time, determine which response time group
-        it belongs in.  This implementation depends on the rtime_thresholds
-        having been pre-sorted
+    def addData(self, bucketStore):
         """
-        # skip the 'max_possible' key at the end of the list
-        for key in CONFIG.rtimeThresholds[:len(CONFIG.rtimeThresholds)-1]:
-            if rtime < key:
-                return key
-        # return 'max' if nothing else is found.
-        return CONFIG.rtimeThresholds[len(CONFIG.rtimeThresholds)-1]
-
-    def addData(self, columns):
+        Takes the response time groups of every transaction from the bucket
+        store.  Only tests that passed are counted, since Grinder records no
+        response time for failures.
         """
-        This method will be called once for every line in the data_ file, which
-        is potentially a large number.  Make it perform well.
-        """
-        if not CONFIG.useThresholds:
-            return
-        # bail if the transaction did not pass since Grinder records no
-        # response time in that case
-        if columns[ERRORS_COLUMN].strip() != "0":
+        self._ordinals = bucketStore.getOrdinals()
+        if not bucketStore.hasResponseTimeGroups():
+            logger.warn("The response time groups were not counted, they are left out of the report")
             return
-        rtimeSeconds=float(columns[RESPONSE_TIME_COLUMN])/1000.0
-        key = self.__getKey__(rtimeSeconds)
-        if CONFIG.isShowTransactionData():
-            txName = self._txNumberNameMap[columns[TEST_NUMBER_COLUMN].strip()]
-            #logger.info("Test %s rtime %f group %f" %(txName, rtimeSeconds, key))
-            self._responseTimeGroups[txName][key] += 1
-        self._responseTimeGroups[ALL_TRANSACTIONS_VALUE][key] += 1
+        self._groups = ResponseTimeGroups(bucketStore)
 
-    def getTxPercent(self, txName, maxTimeSec):
-        txs = self._responseTimeGroups[txName][maxTimeSec]
-        return txs / self._totalTxPassMap[txName]
+    def _getOrdinal(self, txNum):
+        if txNum == ALL_TRANSACTIONS_KEY:
+            return TransactionOrdinals.ALL_TRANSACTIONS
+        return self._ordinals.getOrdinal(int(txNum))
 
     def printSummaryData(self):
-        for txName in self._responseTimeGroups.keys():
-            logger.debug("tx %s, time groups: %s" %(txName, self._responseTimeGroups[txName]))
+        if self._groups == None:
+            return
+        for txNum, txName in self._txNumberNameMap.items():
+            ordinal = self._getOrdinal(txNum)
+            if ordinal != TransactionOrdinals.UNKNOWN:
+                counts = [self._groups.getCount(ordinal, group) for group in range(self._groups.getGroupCount())]
+                logger.debug("tx %s, time groups: %s" %(txName, counts))
 
     
 
@@ -187,161 +170,172 @@ class ClientLogAnalyzer:
     Generates JFreeChart Datasets for transactions per second, response
     time, and bandwidth utilization, based on the grinder agent logs.
 
+    The counts of every process are added up, so the processes need not
+    behave alike.  A store of each process is also kept, for the reports
+    of the single processes.
+
     '''
     # class variables
     dataFiles = None
     outFile = None
-    _agentMultiplier = None
-    _txNameDatasets = None # maps transaction names to data sets
-    bucketList = None
-    msPerBucket = None
-    maxElapsedTime = None
+    bucketStore = None
+    processStores = None # the bucket store of every data file
     _summaryData = None # maps transaction numbers to transaction names
     rtimeGroupHandler = None
     
-    def __init__(self, dataFiles, summaryData, agents):
+    def __init__(self, dataFiles, summaryData, bucketStore=None):
         self.dataFiles = dataFiles       
         self._summaryData = summaryData
-        self._agentMultiplier = agents
-        self._setTestStartTime_(dataFiles[0])
-        self._setTestDuration_(dataFiles[0])
-        self.rtimeGroupHandler = ResponseTimeGroupHandler(summaryData.getTxNumNameMap())
-        self._analyzeLogs()
-        self._txNameDatasets = None
-        self.maxElapsedTime = long(0)
+        self._analyzeLogs(bucketStore)
         logger.debug("DEBUG: config == null? " + str(CONFIG.buckets))
 
-    def _setTestStartTime_(self, grinderDataFile):
+    def _analyzeLogs(self, bucketStore):
+        '''
+        Analyzes grinder agent logs.  Builds the buckets, from the caches
+        of the data files where possible, unless a bucket store is given.
+        Each data file is read once, for both the buckets of all processes
+        and those of its own process.
+        The start and duration of the test are learned by the bucket store
+        while the lines are read, since grinder data is not guaranteed to
+        be in chronological order.  Lines that started before the first or
+        after the last line of their data file are still put in the bucket
+        of their start time, and their number is logged.
+        '''
         global TEST_START_TIME
+        if bucketStore == None:
+            # Read through the data logs to populate the buckets w/ scale data
+            testNumbers = [int(txNum) for txNum in self.getTransactionMap().keys()
+                           if txNum != ALL_TRANSACTIONS_KEY]
+            self.processStores = jarray.zeros(len(self.dataFiles), BucketStore)
+            bucketStore = BucketStoreCache(CONFIG).load(self.dataFiles, testNumbers, self.processStores)
+        self.bucketStore = bucketStore
+        before = bucketStore.getLinesBeforeWindow()
+        after = bucketStore.getLinesAfterWindow()
+        if before + after > 0:
+            logger.warn("%d data lines started before the first line of their data file and %d after its last line"
+                        % (before, after))
+        self.rtimeGroupHandler = ResponseTimeGroupHandler(self.getTransactionMap())
+        if CONFIG.useThresholds:
+            self.rtimeGroupHandler.addData(self.bucketStore)
         # as of Grinder 3.1, time column is absolute, rather than elapsed test time
-        file=open(grinderDataFile)
-        file.readline() # advance the pointer to line 2
-        line2 = file.readline()
-        TEST_START_TIME = long(line2.split( "," )[ELAPSED_TIME_COLUMN].strip())
-        logger.debug("DEBUG: start time = " + str(TEST_START_TIME))
-
-    def _setTestDuration_(self, grinderDataFile):
-        ''' Determine the duration of the test by reading the timestamps 
-        from the first and last lines of the data files. '''
-        maxElapsedTime=long(0)
-        elapsedTime = 0
-        for grinderDataFile in self.dataFiles:
-            # grinder data is not guaranteed to be in chronological order.
-            # look at the last 200 lines to find the max elapsed time
-            # value.
-            for line in tail( grinderDataFile, 200, ignoreBlankLines=True ):
-                # Trilok Khairnar's fix for data file containing < 200 lines
-                elapsedTimeword = line.split( "," )[ELAPSED_TIME_COLUMN].strip()
-                if elapsedTimeword.find("tart") < 0: # skip the header row for G 3.0 and 3.1
-                    elapsedTime = long( elapsedTimeword) - TEST_START_TIME
-                if elapsedTime > maxElapsedTime :
-                    maxElapsedTime = elapsedTime
-            self.msPerBucket=maxElapsedTime/CONFIG.buckets + 1 # round up
-        #TODO -- make determining max time more bulletproof.  Perhaps detect file
-        #        size and tail more lines for larger files.
-        maxElapsedTime = long(maxElapsedTime * 1.00) # add a 1% safety factor
-        self.maxElapsedTime = maxElapsedTime - TEST_START_TIME
-        logger.debug("DEBUG: Max elapsed time == " + str(self.maxElapsedTime))        
-        
-    def _analyzeLogs(self):
-        '''  Analyzes grinder agent logs.  Builds the list of buckets. '''
-        # build an empty list of buckets       
-        self.bucketList=[]
-        for i in range(CONFIG.buckets+1):
-            bucket = ga.bucket.getBucket(i * self.msPerBucket, (i+1) * self.msPerBucket, self)
-            self.bucketList.append(bucket)
-
-        # Read through the data logs to populate the buckets w/ scale data
-        for dataFile in self.dataFiles:
-            logger.info("    Analyzing %s" %dataFile)
-            currentBucketIndex = 0;
-            input=open( dataFile )
-            line = input.readline() # throw away the first line w/ the headers
-            line = input.readline() # now we have first "data" line
-            while line != "":
-                data = line.split( "," )
-                elapsed_time_word = data[ELAPSED_TIME_COLUMN].strip() 
-                elapsedTime = long(elapsed_time_word) - TEST_START_TIME
-                # do we need a new bucket?
-                # TODO -- what if one line is grossly out of chronological order?
-                #         There's no logic to go back to the previous bucket
-                while long( elapsedTime ) > self.bucketList[currentBucketIndex].endTime:
-                    logger.debug("Bucket %d, elapsed time: %d, bucket end: %d" \
-                                 %(currentBucketIndex, elapsedTime, self.bucketList[currentBucketIndex].endTime))
-                    currentBucketIndex += 1
-                # handle case where data file has fewer lines that configured buckets
-                if currentBucketIndex < self.bucketList.__len__():
-                    self.bucketList[currentBucketIndex].addLine(data)
-                    self.rtimeGroupHandler.addData(data)
-                line = input.readline()
-            input.close()
-        if CONFIG.isUseThresholds():
-            self.rtimeGroupHandler.addRTGroupsToReport(VORPAL.getPlugin("analyzer"))
+        TEST_START_TIME = self.bucketStore.getStartTime()
+        logger.debug("DEBUG: start time = %d, end time = %d, ms per bucket = %d"
+                     % (TEST_START_TIME, self.bucketStore.getEndTime(), self.bucketStore.getMsPerBucket()))
         self.rtimeGroupHandler.printSummaryData()
     
-    def getAgentMultiplier(self):
-        return self._agentMultiplier
+    def getProcessAnalyzer(self, process, summaryData):
+        '''
+        Returns an analyzer of the data file of a single process, with the
+        buckets read by this analyzer.
+        '''
+        return ClientLogAnalyzer([self.dataFiles[process]], summaryData, self.processStores[process])
+
+    def getDataSets(self, txNum):
+        '''
+        For a given transaction number, return a set of JFreeChart datasets
+        with data on tx/sec, response times, and bandwidth.  The datasets
+        are built on every call and not kept, so only the graphs of the
+        transactions being drawn hold series.
+        '''
+        logger.debug("DEBUG: building DS for " + txNum)
+        dataSetGroup = {}
+        txSecDataset = XYSeriesCollection() # not returning a new object
+        bandwidthDataSet = XYSeriesCollection()
+        simpleResponseTimeDataset = XYSeriesCollection()
+        httpResponseTimeDataset = DefaultTableXYDataset()
+        meanMaxResponseTimeDataset = XYSeriesCollection()
+        txSecPassSeries = XYSeries("tx/sec passed")
+        txSecFailSeries = XYSeries("tx/sec failed")
+        meanResponseTimeSeries = XYSeries("mean response time", True, False)
+        rtMeanResponseTimeSeries = XYSeries("mean response time", True, False)
+        maxResponseTimeSeries = XYSeries("max response time", True, False)
+        finishTimeSeries = XYSeries("complete", True, False)
+        resolveHostSeries = XYSeries("resolveHost", True, False)
+        connectSeries = XYSeries("connect", True, False)
+        firstByteSeries = XYSeries("firstByte", True, False)
+        bandwidthSeries = XYSeries("KB/sec")
+        store = self.bucketStore
+        ordinal = self._getOrdinal(txNum)
+        times = store.getBucketStartTimes()
+        meanResponseTimes = store.getMeanResponseTime(ordinal)
+        # each series gets at most as many points as its chart is wide
+        self._addToSeries(txSecPassSeries, times, store.getTxSecPassed(ordinal), CONFIG.tpsChartWidth)
+        self._addToSeries(txSecFailSeries, times, store.getTxSecFailed(ordinal), CONFIG.tpsChartWidth)
+        self._addToSeries(meanResponseTimeSeries, times, meanResponseTimes, CONFIG.tpsChartWidth)
+        self._addToSeries(rtMeanResponseTimeSeries, times, meanResponseTimes, CONFIG.rtChartWidth)
+        self._addToSeries(maxResponseTimeSeries, times, store.getMaxResponseTime(ordinal), CONFIG.rtChartWidth)
+        percentileSeries = []
+        if store.hasPercentilesOverTime():
+            for percentile in CONFIG.percentiles:
+                series = XYSeries("%s response time" % Columns.getPercentileLabel(percentile), True, False)
+                self._addToSeries(series, times, store.getPercentileResponseTimes(ordinal, percentile), CONFIG.rtChartWidth)
+                percentileSeries.append(series)
+        if ga.constants.VORPAL.getPlugin("analyzer").isHTTP():
+            self._addToSeries(bandwidthSeries, times, store.getThroughputKBSec(ordinal), CONFIG.bwChartWidth)
+            # the stacked series must share their times, so they
+            # keep the points picked for their sum, the mean
+            indices = SeriesDownsampler.largestTriangleThreeBuckets(times, meanResponseTimes, CONFIG.rtChartWidth)
+            self._addToSeries(finishTimeSeries, times, store.getMeanFinishTime(ordinal), indices)
+            self._addToSeries(resolveHostSeries, times, store.getMeanResolveHostTime(ordinal), indices)
+            self._addToSeries(connectSeries, times, store.getMeanConnectTime(ordinal), indices)
+            self._addToSeries(firstByteSeries, times, store.getMeanFirstByteTime(ordinal), indices)
+        txSecDataset.addSeries(txSecPassSeries)
+        txSecDataset.addSeries(txSecFailSeries)
+        httpResponseTimeDataset.addSeries(resolveHostSeries)
+        httpResponseTimeDataset.addSeries(connectSeries)
+        httpResponseTimeDataset.addSeries(firstByteSeries)
+        httpResponseTimeDataset.addSeries(finishTimeSeries)
+        simpleResponseTimeDataset.addSeries(meanResponseTimeSeries)
+        meanMaxResponseTimeDataset.addSeries(rtMeanResponseTimeSeries)
+        meanMaxResponseTimeDataset.addSeries(maxResponseTimeSeries)
+        for series in percentileSeries:
+            meanMaxResponseTimeDataset.addSeries(series)
+        bandwidthDataSet.addSeries(bandwidthSeries)
+        dataSetGroup[TX_SEC_KEY] = txSecDataset
+        dataSetGroup[HTTP_RESPONSE_TIME_KEY] = httpResponseTimeDataset
+        dataSetGroup[THROUGHPUT_KEY] = bandwidthDataSet
+        dataSetGroup[SIMPLE_RESPONSE_TIME_KEY] = simpleResponseTimeDataset
+        dataSetGroup[RESPONSE_TIME_MEAN_MAX_KEY] = meanMaxResponseTimeDataset
+        if CONFIG.isShowHeatmap() and store.hasPercentilesOverTime():
+            dataSetGroup[LATENCY_HEATMAP_KEY] = LatencyHeatmap(store, ordinal, CONFIG.rtChartWidth)
+        return dataSetGroup
+
+    def addPercentilesToReport(self, analyzerPlugin):
+        '''
+        Adds the response time percentiles of each transaction to the report
+        rows.  Like the graphs, they cover the data files of this analyzer.
+        '''
+        store = self.bucketStore
+        if not CONFIG.isShowPercentiles():
+            return
+        txNumNameMap = self.getTransactionMap()
+        for txNum in txNumNameMap.keys():
+            if txNum == ALL_TRANSACTIONS_KEY:
+                reportRow = analyzerPlugin.getTotalsRow()
+            else:
+                reportRow = analyzerPlugin.getRow(txNumNameMap[txNum])
+            if reportRow == None:
+                # transaction not run by this process
+                continue
+            ordinal = self._getOrdinal(txNum)
+            for percentile in CONFIG.percentiles:
+                responseTime = store.getPercentileResponseTime(ordinal, percentile)
+                reportRow.addNumericTransactionData(Columns.getPercentileColumn(percentile), float(responseTime))
+
+    def _getOrdinal(self, txNum):
+        if txNum == ALL_TRANSACTIONS_KEY:
+            return TransactionOrdinals.ALL_TRANSACTIONS
+        return self.bucketStore.getOrdinals().getOrdinal(int(txNum))
 
-    def getDataSets(self, txName):
+    def _addToSeries(self, series, times, values, points):
         '''
-        For a given txNum name, return a set of JFreeChart datasets
-        with data on tx/sec, response times, and bandwidth.
+        Adds the points to the series.  points is either the most points to
+        add, picked by SeriesDownsampler, or the indices of the points.
         '''
-        logger.debug("getting data sets for " + txName)
-        if self._txNameDatasets == None:
-            logger.warn("Building data sets.")
-            txSecDataset = None
-            # build 'em
-            self._txNameDatasets = {}
-            txNums = self._summaryData.getTxNumNameMap().keys()
-            for txNum in txNums:
-                logger.debug("DEBUG: building DS for " + txNum)
-                dataSetGroup = {}
-                txSecDataset = XYSeriesCollection() # not returning a new object
-                bandwidthDataSet = XYSeriesCollection()
-                simpleResponseTimeDataset = XYSeriesCollection()
-                httpResponseTimeDataset = DefaultTableXYDataset()
-                meanMaxResponseTimeDataset = XYSeriesCollection()
-                txSecPassSeries = XYSeries("tx/sec passed")
-                txSecFailSeries = XYSeries("tx/sec failed")
-                meanResponseTimeSeries = XYSeries("mean response time", True, False)
-                maxResponseTimeSeries = XYSeries("max response time", True, False)
-                finishTimeSeries = XYSeries("complete", True, False)
-                resolveHostSeries = XYSeries("resolveHost", True, False)
-                connectSeries = XYSeries("connect", True, False)
-                firstByteSeries = XYSeries("firstByte", True, False)
-                bandwidthSeries = XYSeries("KB/sec")
-                for bucket in self.bucketList:
-                    txSecPass = bucket.getTxSecPass(txNum)
-                    txSecPassSeries.add(bucket.getStartTime()/1000.0, txSecPass)
-                    txSecFail = bucket.getTxSecFail(txNum)
-                    txSecFailSeries.add(bucket.getStartTime()/1000.0, txSecFail)
-                    meanResponseTimeSeries.add(bucket.getStartTime()/1000.0, bucket.getMeanResponseTime(txNum))
-                    maxResponseTimeSeries.add(bucket.getStartTime()/1000.0, bucket.getMaxResponseTime(txNum))
-                    if ga.constants.VORPAL.getPlugin("analyzer").isHTTP():
-                        bandwidthSeries.add(bucket.getStartTime()/1000.0, bucket.getMeanThroughputKBSec(txNum))
-                        finishTimeSeries.add(bucket.getStartTime()/1000.0, bucket.getMeanFinishTime(txNum))
-                        resolveHostSeries.add(bucket.getStartTime()/1000.0, bucket.getMeanResolveHostTime(txNum))
-                        connectSeries.add(bucket.getStartTime()/1000.0, bucket.getMeanConnectTime(txNum))
-                        firstByteSeries.add(bucket.getStartTime()/1000.0, bucket.getMeanFirstByteTime(txNum))
-                txSecDataset.addSeries(txSecPassSeries)
-                txSecDataset.addSeries(txSecFailSeries)
-                httpResponseTimeDataset.addSeries(resolveHostSeries)
-                httpResponseTimeDataset.addSeries(connectSeries)
-                httpResponseTimeDataset.addSeries(firstByteSeries)
-                httpResponseTimeDataset.addSeries(finishTimeSeries)
-                simpleResponseTimeDataset.addSeries(meanResponseTimeSeries)
-                meanMaxResponseTimeDataset.addSeries(meanResponseTimeSeries)
-                meanMaxResponseTimeDataset.addSeries(maxResponseTimeSeries)
-                bandwidthDataSet.addSeries(bandwidthSeries)
-                dataSetGroup[TX_SEC_KEY] = txSecDataset
-                dataSetGroup[HTTP_RESPONSE_TIME_KEY] = httpResponseTimeDataset
-                dataSetGroup[THROUGHPUT_KEY] = bandwidthDataSet
-                dataSetGroup[SIMPLE_RESPONSE_TIME_KEY] = simpleResponseTimeDataset
-                dataSetGroup[RESPONSE_TIME_MEAN_MAX_KEY] = meanMaxResponseTimeDataset
-                self._txNameDatasets[txNum] = dataSetGroup
-            logger.debug("DEBUG: done building data sets.")
-        return self._txNameDatasets[txName]
+        if type(points) == int:
+            points = SeriesDownsampler.largestTriangleThreeBuckets(times, values, points)
+        for i in points:
+            series.add(times[i], values[i])
 
     def getTransactionMap(self):
         #logger.info("Num name map: %s" %self._summaryData.getTxNumNameMap())
@@ -352,90 +346,107 @@ class ClientLogAnalyzer:
 
 class SummaryDataRegistry:
     """
-    Container for the summary data at the end of the grinder out_ file.
+    Container for the summary data at the end of the grinder out_ file,
+    read by the java SummaryTable.
     
     """
-    lineNameMap = None
     txNumNameMap = None
+    table = None
     
     def __init__(self, outFile):
         """
-        Loads everything from the out file.  Filters out duplicate names.
+        Loads the final statistics from the out file.  Duplicate names are
+        told apart by their test number.
         
         """
-        self.txNumNameMap = {}
-        self.lineNameMap = {} # key: data line, val: tx name
-        finalOutLines = reverseSeek (outFile, TABLE_MARKER)
-        for line in finalOutLines:
-            if line.find( "Test" ) == 0 or line.find("Test") == 1 or line.startswith("Totals"):
-                if line.startswith("Totals"):
-                    # Format the totals line to be identical to test lines
-                    line=line.replace("Totals", "Totals 0") # add a column
-                    line='%s "%s"' %(line, ALL_TRANSACTIONS_VALUE)
-                testName = self._getInitialTxName(line)
-                if CONFIG.isShowTransactionData() or testName == "All Transactions":
-                    self.lineNameMap [line] = testName
-        if len(self.lineNameMap) == 0:
+        self.table = SummaryTable.read(outFile, CONFIG)
+        if self.table.isEmpty():
             msg = """
                 FATAL:  Incomplete or corrupted grinder out file.  No summary data containing
                 test number/name mappings found."""
             logger.fatal(msg)
             sys.exit(1)
-            
-        duplicateTxNames = self._getListDuplicates(self.lineNameMap.values())
-        if len(duplicateTxNames) > 0:
-            logger.info("Duplicate transaction names found: %s" %duplicateTxNames)
-        for line in self.lineNameMap.keys():
-            txName = self._getInitialTxName(line)
-            txNum = self._getTxNum(line)
-            if duplicateTxNames.__contains__(txName):
-                txName ="%s_%s" %(txName, txNum)
-            self.txNumNameMap[txNum] = txName
-            self.lineNameMap[line] = txName
+        self.txNumNameMap = {ALL_TRANSACTIONS_KEY: ALL_TRANSACTIONS_VALUE}
+        if CONFIG.isShowTransactionData():
+            for testNumber in self.table.getTestNumbers():
+                self.txNumNameMap[str(testNumber)] = self.table.getTestName(testNumber)
         logger.debug("Final tx names: %s" %self.txNumNameMap.values())
 
+    def getTxNumNameMap(self):
+        return self.txNumNameMap
+    
+    def getTable(self):
+        return self.table
 
-    def _getTxNum(self, line):
-        return line.split( " " )[1] # test number is 2nd column
     
-    def _getInitialTxName(self, line):
-        return line.split( '"' )[1]   # test names appear in quotes
+
+class CombinedSummaryData:
+    """
+    The transactions found in the summaries of all grinder out_ files, for
+    analyzing the data_ files of every process in a single pass.  When
+    processes disagree on the name of a test number, the first name wins.
     
-    def _getListDuplicates(self, list):
-        """
-        Returns a subset of list containing items that appear more than once
-        
-        """
-        itemCountMap = {}
-        for item in list:
-            if itemCountMap.has_key(item):
-                itemCountMap[item] += 1
-            else:
-                itemCountMap[item] = 1
-        # list comprehension, w00t
-        return [ key for key in itemCountMap.keys() if itemCountMap[key] > 1]
- 
+    """
+    txNumNameMap = None
+
+    def __init__(self, summaries):
+        self.txNumNameMap = {}
+        for summaryData in summaries:
+            txNumNameMap = summaryData.getTxNumNameMap()
+            for txNum in txNumNameMap.keys():
+                if not self.txNumNameMap.has_key(txNum):
+                    self.txNumNameMap[txNum] = txNumNameMap[txNum]
+
     def getTxNumNameMap(self):
         return self.txNumNameMap
+
+
+
+class LiveSummaryData:
+    """
+    The transactions of a test that is still running.  The out_ files only
+    name the tests in their final summaries, so the tests seen in the data_
+    files so far are named by number.
     
-    def getTestDataLines(self):
-        return self.lineNameMap.keys()
-    
-    def getTxName(self, line):
-        return self.lineNameMap[line]
+    """
+    txNumNameMap = None
+
+    def __init__(self, testNumbers):
+        self.txNumNameMap = {ALL_TRANSACTIONS_KEY: ALL_TRANSACTIONS_VALUE}
+        if CONFIG.isShowTransactionData():
+            for testNumber in testNumbers:
+                self.txNumNameMap[str(testNumber)] = "Test %d" % testNumber
+
+    def getTxNumNameMap(self):
+        return self.txNumNameMap
 
+
+class SketchSummaryData:
+    """
+    The transactions of merged sketches, named as in the out_ files of the
+    load generators that wrote them.
     
+    """
+    txNumNameMap = None
+
+    def __init__(self, sketch):
+        self.txNumNameMap = {ALL_TRANSACTIONS_KEY: ALL_TRANSACTIONS_VALUE}
+        if CONFIG.isShowTransactionData():
+            for testNumber in sketch.getTestNumbers():
+                self.txNumNameMap[str(testNumber)] = sketch.getTestName(testNumber)
+
+    def getTxNumNameMap(self):
+        return self.txNumNameMap
+
+
 
 #####################################################################
 # End of class definitions.  Module logic below
 #####################################################################
 
 def usage():
-    logger.fatal('Usage: analyzer.py "<grinder data Files>" <grinder out file> [number of agents]')
+    logger.fatal('Usage: analyzer.py "<grinder data Files>" <grinder out file>')
     sys.exit()
-   
-def getAgentCount():
-    return len (grinderDataFiles)
 
 def assertCurrentJython():
     if SUPPORTED_JYTHON_VERSIONS.__contains__(sys.version.split()[0]):
@@ -447,19 +458,245 @@ def assertCurrentJython():
         logger.fatal("\t" + version)
     sys.exit()
 
+def generateGraphs(analyzer, reportDir, clientCharts=None):
+    '''
+    Writes the graphs of every transaction.  The charts are built here and
+    drawn in parallel by a ChartRenderer; all of them are on disk when this
+    returns.  With client_charts, or clientCharts, only the series of the
+    graphs are written.
+    '''
+    if clientCharts == None:
+        clientCharts = CONFIG.isClientCharts()
+    analyzerPlugin = VORPAL.getPlugin("analyzer")
+    analyzerPlugin.setHeatmap(CONFIG.isShowHeatmap() and analyzer.bucketStore.hasPercentilesOverTime())
+    analyzerPlugin.setClientCharts(clientCharts)
+    if clientCharts:
+        writeSeries(analyzer, reportDir)
+        return
+    renderer = ChartRenderer(CONFIG)
+    try:
+        transactions = analyzer.getTransactionMap()
+        for transactionNumber in transactions.keys():
+            datasets = analyzer.getDataSets(transactionNumber)
+            transactionName = transactions[transactionNumber]
+            perfDatasets = [datasets[TX_SEC_KEY],datasets[SIMPLE_RESPONSE_TIME_KEY]]
+            perfGrapher = ga.graph.PerformanceGrapher(perfDatasets, transactionName, TEST_START_TIME)
+            perfGrapher.saveChartToDisk(reportDir, renderer)
+            meanMaxRTGrapher = ga.graph.NonHTTPResponseTimeGrapher([datasets[RESPONSE_TIME_MEAN_MAX_KEY]], transactionName, TEST_START_TIME)
+            meanMaxRTGrapher.saveChartToDisk(reportDir, renderer)
+            if datasets.has_key(LATENCY_HEATMAP_KEY):
+                heatmapGrapher = ga.graph.LatencyHeatmapGrapher([datasets[LATENCY_HEATMAP_KEY]], transactionName, TEST_START_TIME)
+                heatmapGrapher.saveChartToDisk(reportDir, renderer)
+            # BAIL HERE if non-http
+            if not VORPAL.getPlugin("analyzer").isHTTP():
+                continue
+            bw = ga.graph.BandwidthGrapher([datasets[THROUGHPUT_KEY]], transactionName, TEST_START_TIME)
+            bw.saveChartToDisk(reportDir, renderer)
+            rtGrapher = ga.graph.ResponseTimeGrapher([datasets[HTTP_RESPONSE_TIME_KEY]],
+                                            transactionName,
+                                            TEST_START_TIME)
+            rtGrapher.saveChartToDisk(reportDir, renderer)
+    finally:
+        renderer.finish()
+
+def writeSeries(analyzer, reportDir):
+    '''
+    Writes the series of the graphs of every transaction, for the report
+    page to draw in the browser.
+    '''
+    store = analyzer.bucketStore
+    export = SeriesExport(CONFIG, VORPAL.getPlugin("analyzer").isHTTP())
+    transactions = analyzer.getTransactionMap()
+    for transactionNumber in transactions.keys():
+        export.addTransaction(transactions[transactionNumber], store, analyzer._getOrdinal(transactionNumber))
+    export.write(reportDir, store)
+
+def readErrorLogs():
+    '''
+    Indexes the error_ log of every process.  Returns the indexes by
+    process, None for processes without an error_ log.
+    '''
+    errorIndexes = [None] * len(grinderDataFiles)
+    if not CONFIG.isAnalyzeErrorLogs():
+        return errorIndexes
+    for n, errorFile in grinderErrorFiles.items():
+        if n < len(errorIndexes):
+            errorIndexes[n] = ErrorLogIndex(CONFIG.getErrorEntries())
+            errorIndexes[n].read(errorFile)
+    return errorIndexes
+
+def addErrorsToReport(errorIndex, analyzer, reportDir):
+    '''
+    Shows the most frequent errors of the index in the report, with their
+    entries copied into the report directory.
+    '''
+    analyzerPlugin = VORPAL.getPlugin("analyzer")
+    if errorIndex == None or errorIndex.getErrorCount() == 0:
+        analyzerPlugin.setErrorClusters([], 0)
+        return
+    for txNum, txName in analyzer.getTransactionMap().items():
+        if txNum != ALL_TRANSACTIONS_KEY:
+            errorIndex.setTestName(int(txNum), txName)
+    clusters = errorIndex.getClusters(CONFIG.getErrorClusters())
+    store = analyzer.bucketStore
+    errorIndex.writeEntries(reportDir, clusters, store.getFirstBucketTime(), store.getMsPerBucket(),
+                            store.getBucketCount())
+    analyzerPlugin.setErrorClusters(clusters, errorIndex.getErrorCount())
+
+def isTestFinished():
+    '''
+    The test is over once every process has written its final statistics
+    to its out_ file.
+    '''
+    for outFile in grinderOutFiles:
+        if not contains(outFile, TABLE_MARKER):
+            return False
+    return True
+
+def writeLiveReport(follower, reportDir, dashboard=None):
+    '''
+    Writes a report of the data_ lines read so far by the follower, and
+    publishes their series to the dashboard if there is one.  The summary
+    rows are computed from the data_ lines rather than read from the out_
+    files.  Returns False if there are no lines yet.
+    '''
+    store = follower.getStore()
+    if store.getBucketCount() == 0:
+        return False
+    analyzer = ClientLogAnalyzer(grinderDataFiles, LiveSummaryData(follower.getTestNumbers()), store)
+    if dashboard:
+        names = [None] * store.getOrdinals().size()
+        for txNum, txName in analyzer.getTransactionMap().items():
+            names[analyzer._getOrdinal(txNum)] = txName
+        dashboard.update(store, follower.getPyramid(), names)
+    # drawing every .png again on each refresh would take longer than
+    # reading the new lines, so the live report draws them in the browser
+    writeStoreReport(analyzer, follower.isHTTP(), "live", reportDir, True)
+    logger.warn("Live report updated.")
+    return True
+
+def writeStoreReport(analyzer, http, reportName, reportDir, clientCharts=None):
+    '''
+    Writes a report whose summary rows are computed from the buckets of the
+    analyzer, for logs without out_ file summaries.  See generateGraphs for
+    clientCharts.
+    '''
+    store = analyzer.bucketStore
+    analyzerPlugin = VORPAL.getPlugin("analyzer")
+    if http:
+        analyzerPlugin.enableHTTPStatistics()
+    generateGraphs(analyzer, reportDir, clientCharts)
+    analyzerPlugin.clearRows()
+    ga.report.addThresholdColumns(analyzerPlugin)
+    txNumNameMap = analyzer.getTransactionMap()
+    for txNum in txNumNameMap.keys():
+        row = ReportRow(CONFIG)
+        row.setFromStore(store, analyzer._getOrdinal(txNum))
+        if txNum == ALL_TRANSACTIONS_KEY:
+            row.setTxName("Totals")
+            analyzerPlugin.setTotalsRow(row)
+        else:
+            row.setTxName(txNumNameMap[txNum])
+            analyzerPlugin.addDataRow(row)
+    if CONFIG.isUseThresholds():
+        analyzer.rtimeGroupHandler.addRTGroupsToReport(analyzerPlugin)
+    analyzer.addPercentilesToReport(analyzerPlugin)
+    ga.report.writeReport(reportName, reportDir)
+
+def writeSketch(analyzer, reportDir):
+    '''
+    Writes the buckets and histograms of this load generator's logs, to be
+    merged with those of the other load generators by mergeSketches.
+    '''
+    store = analyzer.bucketStore
+    txNumNameMap = analyzer.getTransactionMap()
+    testNumbers = store.getOrdinals().getTestNumbers()
+    testNames = []
+    for testNumber in testNumbers:
+        testNames.append(txNumNameMap.get(str(testNumber), "Test %d" % testNumber))
+    fileName = "%s%ssketch_%s%s" % (reportDir, os.sep, getSketchHostName(), SketchFile.SUFFIX)
+    SketchFile(store, testNumbers, testNames, VORPAL.getPlugin("analyzer").isHTTP()).write(fileName)
+    logger.warn("Sketch written to %s" % fileName)
+
+def getSketchHostName():
+    '''
+    The name of this load generator, made safe for a file name.  Hosts
+    whose name cannot be looked up are called localhost.
+    '''
+    try:
+        hostName = InetAddress.getLocalHost().getHostName()
+    except UnknownHostException, e:
+        logger.warn("Could not look up the host name, the sketch is named localhost: %s" % e)
+        hostName = "localhost"
+    return ReportRow.getSafeName(hostName)
+
+def mergeSketches():
+    '''
+    Merges the sketches of the load generators of a test into a cluster
+    report, instead of analyzing logs.  Its percentiles are those of all
+    the load generators' logs together.
+    '''
+    files = CONFIG.getMergeSketches()
+    if len(files) == 0:
+        logger.fatal("FATAL: no sketch files found in merge_sketches")
+        sys.exit(1)
+    sketch = SketchFile.merge(files, CONFIG)
+    reportDir = "%s_cluster" % CONFIG.reportDir
+    ga.report.prepareReportDir(reportDir)
+    analyzer = ClientLogAnalyzer([], SketchSummaryData(sketch), sketch.getStore())
+    writeStoreReport(analyzer, sketch.isHTTP(), "cluster", reportDir)
+    logger.warn("Merged %d sketches." % len(files))
+
+def follow():
+    '''
+    Follows the data_ files while the test is running.  Every
+    follow_interval seconds the lines appended since the last refresh are
+    read and the live report is rewritten, until the test is over.
+    '''
+    follower = LogFollower(grinderDataFiles, [], CONFIG)
+    reportDir = "%s_live" % CONFIG.reportDir
+    ga.report.prepareReportDir(reportDir)
+    dashboard = None
+    if CONFIG.getDashboardPort() > 0:
+        dashboard = DashboardServer(CONFIG.getDashboardPort(),
+                                    reportDir + os.sep + "templates" + os.sep + "dashboard.html", CONFIG)
+        dashboard.start()
+    try:
+        written = False
+        while True:
+            # check first, so the last refresh reads every line
+            finished = isTestFinished()
+            if follower.refresh() > 0 or not written:
+                written = writeLiveReport(follower, reportDir, dashboard)
+            if finished:
+                logger.warn("The test is over.")
+                return
+            time.sleep(CONFIG.getFollowInterval())
+    finally:
+        follower.checkpoint()
+        if dashboard:
+            dashboard.stop()
+
 def main():
     assertCurrentJython()
     logger.info(CONFIG)
+    if CONFIG.isMergeSketches():
+        mergeSketches()
+        return
     global grinderDataFiles
     grinderDataFiles = []       # grinder data files list
     global grinderOutFiles
     grinderOutFiles = []        # grinder out files list
+    global grinderErrorFiles
+    grinderErrorFiles = {}      # grinder error files by process
 
     # upload grinder data and out files from the local directory target/test/log_files
     log_dir = "target/test/log_files"  # directorio de los ficheros generados por el agent
     log_files = os.listdir(log_dir)                
     for filename in log_files:
         log_file = "%s/%s" % (log_dir, filename)
+        if filename.find(BucketStoreCache.SUFFIX) != -1:
+            continue # analysis cache, see BucketStoreCache
         position = re.search('[0-9]+', filename)
         n = int(position.group(0)) 
         if filename.find("data.log") != -1:
@@ -473,7 +710,8 @@ def main():
 #                sys.exit(1)
                 grinderDataFiles[n:n] = (log_file,)      
                 print "data_ file %d was uploaded..." % (n)
-        elif filename.startswith("error"): None
+        elif filename.startswith("error"):
+            grinderErrorFiles[n] = log_file
         else:    
             grinderOutFiles[n:n] = (log_file,)   
             print "out_ file %d was uploaded..." % (n) 
@@ -484,42 +722,67 @@ def main():
         sys.exit(1)  
     
     logger.info("Grinder data files specified: %d\n" %grinderDataFiles.__len__())       
-	
-    for i in range(len(grinderDataFiles)):
+
+    if CONFIG.isFollow():
+        follow()
+
+    summaries = []
+    for i in range(len(grinderOutFiles)):
+        summaryData = SummaryDataRegistry(grinderOutFiles[i])
+        summaries.append(summaryData)
+        if summaryData.getTable().isHTTP():
+            VORPAL.getPlugin("analyzer").enableHTTPStatistics()
+
+    # analyze the data files of all processes once, keeping the buckets of
+    # every process for its own report
+    analyzer = ClientLogAnalyzer(grinderDataFiles, CombinedSummaryData(summaries))
+    allReportDir = "%s_all" % CONFIG.reportDir
+    ga.report.prepareReportDir(allReportDir)
+    generateGraphs(analyzer, allReportDir)
+    errorIndexes = readErrorLogs()
+
+    analyzerPlugin = VORPAL.getPlugin("analyzer")
+    combinedRows = {}
+    combinedTotalsRow = ReportRow(CONFIG)
+    for i in range(len(grinderOutFiles)):
         print "---------------------------------------------------------------"
         print "|      Creating HTML report of data_ and out_ files %d       |" % (i)
         print "---------------------------------------------------------------"
-        summaryData = SummaryDataRegistry(grinderOutFiles[i])   
-        
         # generate HTML report
         reportDir = "%s_%d" % (CONFIG.reportDir, i)
-        
-        reporter = ga.report.getReporter(grinderOutFiles[i], summaryData)
-        reporter.readGrinderOutFile(summaryData, reportDir)
-        
-        # generate the graphs
-        agents=1
-        analyzer = ClientLogAnalyzer(grinderDataFiles, summaryData, agents)
-        transactions = analyzer.getTransactionMap()
-        for transactionNumber in transactions.keys():
-            datasets = analyzer.getDataSets(transactionNumber)
-            transactionName = transactions[transactionNumber]
-            perfDatasets = [datasets[TX_SEC_KEY],datasets[SIMPLE_RESPONSE_TIME_KEY]]
-            perfGrapher = ga.graph.PerformanceGrapher(perfDatasets, transactionName, TEST_START_TIME)
-            perfGrapher.saveChartToDisk(reportDir)
-            meanMaxRTGrapher = ga.graph.NonHTTPResponseTimeGrapher([datasets[RESPONSE_TIME_MEAN_MAX_KEY]], transactionName, TEST_START_TIME)
-            meanMaxRTGrapher.saveChartToDisk(reportDir)
-            # BAIL HERE if non-http
-            if not VORPAL.getPlugin("analyzer").isHTTP():
-                continue
-            bw = ga.graph.BandwidthGrapher([datasets[THROUGHPUT_KEY]], transactionName, TEST_START_TIME)
-            bw.saveChartToDisk(reportDir)
-            rtGrapher = ga.graph.ResponseTimeGrapher([datasets[HTTP_RESPONSE_TIME_KEY]],
-                                            transactionName,
-                                            TEST_START_TIME)
-            rtGrapher.saveChartToDisk(reportDir)
-        
-        reporter.writeReportToFile(i, reportDir)
+        ga.report.prepareReportDir(reportDir)
+        processAnalyzer = analyzer.getProcessAnalyzer(i, summaries[i])
+        generateGraphs(processAnalyzer, reportDir)
+        ga.report.addSummaryRows(summaries[i].getTable())
+        for row in analyzerPlugin.getDataRows():
+            if not combinedRows.has_key(row.getTxName()):
+                combinedRows[row.getTxName()] = ReportRow(CONFIG)
+            combinedRows[row.getTxName()].addProcessRow(row)
+        combinedTotalsRow.addProcessRow(analyzerPlugin.getTotalsRow())
+        if CONFIG.isUseThresholds():
+            processAnalyzer.rtimeGroupHandler.addRTGroupsToReport(analyzerPlugin)
+        processAnalyzer.addPercentilesToReport(analyzerPlugin)
+        addErrorsToReport(errorIndexes[i], processAnalyzer, reportDir)
+        ga.report.writeReport("%d" % i, reportDir)
+
+    print "---------------------------------------------------------------"
+    print "|      Creating HTML report of all processes                  |"
+    print "---------------------------------------------------------------"
+    analyzerPlugin.clearRows()
+    for row in combinedRows.values():
+        analyzerPlugin.addDataRow(row)
+    analyzerPlugin.setTotalsRow(combinedTotalsRow)
+    if CONFIG.isUseThresholds():
+        analyzer.rtimeGroupHandler.addRTGroupsToReport(analyzerPlugin)
+    analyzer.addPercentilesToReport(analyzerPlugin)
+    allErrors = ErrorLogIndex(CONFIG.getErrorEntries())
+    for errorIndex in errorIndexes:
+        if errorIndex != None:
+            allErrors.merge(errorIndex)
+    addErrorsToReport(allErrors, analyzer, allReportDir)
+    ga.report.writeReport("all", allReportDir)
+    if CONFIG.isWriteSketch():
+        writeSketch(analyzer, allReportDir)
     logger.warn ("Log file analysis completed successfully.")
 
 
@@ -527,17 +790,8 @@ def main():
 #####################################################################
 # Control flow begins below
 #####################################################################
-# data_ file format info
-ELAPSED_TIME_COLUMN=3      # elapsed time in ms since test began
-TEST_NUMBER_COLUMN=2       # which test is this data for
-RESPONSE_TIME_COLUMN=4     # no. of ms for server to respond
-ERRORS_COLUMN=5            # did the transaction succeed?
-BYTES_COLUMN=7             # if success, how many bytes in body?
-RESOLVE_TIME_COLUMN=9      # 
-CONNECT_TIME_COLUMN=10     #
-FIRST_BYTE_TIME_COLUMN=11  #
-
-# other constants
+# constants
+# (the data_ file columns are decoded by the java DataLogParser)
 ALL_TRANSACTIONS_KEY="0"
 ALL_TRANSACTIONS_VALUE="All Transactions"
 TX_SEC_KEY="passed"
@@ -545,7 +799,8 @@ THROUGHPUT_KEY="kbSec"
 SIMPLE_RESPONSE_TIME_KEY="simple response time"
 HTTP_RESPONSE_TIME_KEY="http response time"
 RESPONSE_TIME_MEAN_MAX_KEY="response time mean max"
-TABLE_MARKER="Final statistics for this process"
+LATENCY_HEATMAP_KEY="latency heatmap"
+TABLE_MARKER=SummaryTable.MARKER
 
 SUPPORTED_JYTHON_VERSIONS=["2.2.1", "2.5.0", "2.5.1", "2.5.2"]
 
@@ -23,52 +23,40 @@
 
 import os
 import sys
+
+from org.jtmb.grinderAnalyzer import ReverseLineReader
+from org.jtmb.grinderAnalyzer import LogFiles
+
 DEFAULT_MAX_LINES=3000
 
 
 
 #####################################################################
-# private function to reverse-read a single line in a file.  Code
-# contributed by Ross Nicholson.
-#
-# Parameters:
-#    input       an open file
-#    position    the position in the file to begin reading from
-#
-# Returns:
-#    a tuple containing the specified line of text and the
-#    new position marker in the file.
+# Reads a list of lines backwards, like ReverseLineReader.  Used for
+# compressed files, which can only be read from the start: the whole
+# file is streamed and only its last lines are kept.
 #####################################################################
-def __reverseRead__(input, position):
-    line = ""
-    position -= 1
-    input.seek(position)
-    ch = input.read(1)
-    #print "> " + str(position) + "    '" + ch + "'" + "   " + str(ch == '\r') + "  " + str (ch == '\n')
-    if ch != '\r' and ch != '\n':
-        line = ch + line
-    while ch != '\n' and position > 0:
-        position -= 1
-        input.seek(position)
-        ch = input.read(1)
-        if ch != '\r' and ch != '\n':
-            line = ch + line
-        #print str(position) + "    '" + ch + "'" + "   " + str(ch == '\r') + "  " + str (ch == '\n')
-    #print "'" + line + "'   ==''? " + str(line == '') + ",  == CR? " + str (line == '\r') + ",  == NL? " + str(line=='\n')
-    t = (line, position)
-    return (line, position)
+class __LastLinesReader__:
+    def __init__(self, filename, maxLines):
+        self._lines = list(LogFiles.readLastLines(filename, maxLines))
+
+    def readLine(self):
+        if len(self._lines) == 0:
+            return None
+        return self._lines.pop()
+
+    def close(self):
+        pass
 
 
 
 #####################################################################
 # reverseSeek.
-# New implementation to correct a windows compatibility issue
-# raised by Ross Nicholson.  Now reads 1 character at a time in
-# order to accurately detect line endings.  Slower, but reliable.
+# The file is read backwards a block at a time by the java
+# ReverseLineReader, which handles both LF and CRLF line endings.
 #####################################################################
-def __reverse__ (filename, target="", maxLines=DEFAULT_MAX_LINES, ignoreBlank=False):
+def __reverse__ (filename, target="", maxLines=DEFAULT_MAX_LINES, ignoreBlank=False, verbose=True):
     # handle the case where the file does not exist
-    #print "Default max = " + str(DEFAULT_MAX_LINES) + ", Max lines = " + str(maxLines) + ", target='" + target + "'"
     if not os.path.isfile(filename):
         print "FATAL: not a file: '" + filename + "'.  No action performed."
         sys.exit(1)      
@@ -82,33 +70,32 @@ def __reverse__ (filename, target="", maxLines=DEFAULT_MAX_LINES, ignoreBlank=Fa
     search = True
     if target == "":
         search = False
-    input=open(filename)
-    position = fileSize -1
-    # front-load the while loop
-    lineData = __reverseRead__(input, position)
-    linesRead=1
-    line = lineData[0]
-    position = lineData[1]
-    if ignoreBlank==False or line !='':
-        lines = [lineData[0]]
-    if search and line.find(target) > -1:
-        print "'" + target + "' found after searching back " + str(linesRead) + " lines."
-        return lines
-    # either read all the way back to the beginning of the file, or
-    # read back to maxLines, whichever comes first
-    while position > 0 and linesRead < maxLines:
-        lineData = __reverseRead__(input, position)
-        line = lineData[0]
-        position = lineData[1]
-        if ignoreBlank==False or line != '':
-            linesRead += 1
-            lines = [line] + lines
-        if search and line.find(target) > -1:
-            print "'" + target + "' found after searching back " + str(linesRead) + " lines."
-            return lines
+    if LogFiles.isCompressed(filename):
+        reader = __LastLinesReader__(filename, maxLines)
+    else:
+        reader = ReverseLineReader(filename)
+    try:
+        linesRead = 0
+        # either read all the way back to the beginning of the file, or
+        # read back to maxLines, whichever comes first
+        line = reader.readLine()
+        while line != None and linesRead < maxLines:
+            if ignoreBlank==False or line != '':
+                linesRead += 1
+                lines.append(line)
+            if search and line.find(target) > -1:
+                if verbose:
+                    print "'" + target + "' found after searching back " + str(linesRead) + " lines."
+                lines.reverse()
+                return lines
+            line = reader.readLine()
+    finally:
+        reader.close()
     if search:
-        print "'" + target + "' not found in final " + str(linesRead) + " lines of " + filename
+        if verbose:
+            print "'" + target + "' not found in final " + str(linesRead) + " lines of " + filename
         return []
+    lines.reverse()
     return lines
 
 
@@ -153,3 +140,23 @@ def tail(file, lines, ignoreBlankLines=False):
         target is not found.
     '''
     return __reverse__(file, maxLines=lines, ignoreBlank=ignoreBlankLines)
+
+
+
+#####################################################################
+# contains
+#####################################################################
+def contains(file, target, max=DEFAULT_MAX_LINES):
+    '''
+    Checks quietly whether a target string is in the final lines of a
+    file.  Used to poll files that are still being written.
+    
+    Parameters:
+        filename    File to inspect
+        target      String to search for
+        maxlines    (optional) how many lines to inspect before giving up
+    
+    Returns:
+        True if the target is found
+    '''
+    return len(__reverse__(file, target, max, verbose=False)) > 0
@@ -35,20 +35,29 @@ from org.jfree.data.xy import XYSeriesCollection
 from org.jfree.data.xy import DefaultTableXYDataset
 from org.jfree.chart.renderer.xy import StandardXYItemRenderer
 from org.jfree.chart.renderer.xy import StackedXYAreaRenderer2
+from org.jfree.chart.renderer.xy import XYBlockRenderer
 from org.jfree.chart.axis import NumberAxis
+from org.jfree.chart.axis import LogAxis
+from org.jfree.chart.axis import NumberTickUnit
+from org.jfree.chart.title import PaintScaleLegend
 from org.jfree.chart.plot import CombinedDomainXYPlot
 from org.jfree.chart import JFreeChart
 from org.jfree.chart import ChartUtilities
 from org.jfree.chart import ChartFactory
+from org.jfree.ui import RectangleAnchor
+from org.jfree.ui import RectangleEdge
 
 from java.awt import Color as javaColor
 from java.io import File as javaFile
+from java.text import NumberFormat as javaNumberFormat
 from java.text import SimpleDateFormat as javaSimpleDateFormat
 from java.util import Date as javaDate
 
 from org.apache.log4j import *
 from org.apache.log4j import Logger
 
+from org.jtmb.grinderAnalyzer import LatencyHeatmap
+
 import os
 import ga.constants
 
@@ -118,9 +127,11 @@ class AbstractGrapher(object):
 				logger.warn("   WARNING: Grinder Analyzer does not support adding dates to graphs generated from Grinder 3.0-format log files.")
 
     
-    def saveChartToDisk(self, basedir):
+    def saveChartToDisk(self, basedir, renderer=None):
         ''' Writes the chart to disk as a .png file in the specified
-        directory. '''
+        directory.  With a ChartRenderer, the chart is only queued; it is
+        written on the renderer's threads and must not change until the
+        renderer is finished. '''
         fileName = basedir + os.sep
         txName=self.transactionName 
         # fix for Jim Pringle's bug where illegal chars in transaction name
@@ -132,6 +143,10 @@ class AbstractGrapher(object):
         self.setChartOptions()
         logger.debug("DEBUG: height"  + str(self.chart_height))
         logger.debug("DEBUG: weight" + str(self.chart_width))
+        if renderer:
+            renderer.submit(self.chart, fileName, self.chart_width, self.chart_height,
+                            self.__class__.__name__)
+            return
         ChartUtilities.saveChartAsPNG(
               chartFile, 
               self.chart,
@@ -312,6 +327,59 @@ class NonHTTPResponseTimeGrapher(AbstractGrapher):
 
 
 
+class LatencyHeatmapGrapher(AbstractGrapher):
+    ''' Response times over time.  Each cell is colored by the number of
+    passed tests in a time bucket with a response time range; dataSets[0]
+    is a LatencyHeatmap. '''
+
+    chart_height = None
+    chart_width = None
+
+    def __init__(self, dataSets, txName, startTime):
+        AbstractGrapher.__init__(self, dataSets, txName, startTime)
+        self.chart_height = CONFIG.rtChartHeight
+        self.chart_width = CONFIG.rtChartWidth
+
+    def getSubtitles(self):
+        #must return a list of chart subtitles (as strings)
+        return ["Response Time Distribution"]
+
+    def getFilenameSuffix(self):
+        return ".heatmap.png"
+
+    def getYAxisLabel(self):
+        return "response time"
+
+    def _createChart(self):
+        heatmap = self.dataSets[0]
+        paintScale = heatmap.getPaintScale()
+        renderer = XYBlockRenderer()
+        renderer.setBlockWidth(heatmap.getColumnSeconds())
+        renderer.setBlockHeight(1.0)
+        renderer.setBlockAnchor(RectangleAnchor.BOTTOM_LEFT)
+        renderer.setPaintScale(paintScale)
+        timeAxis = NumberAxis(self.getXAxisLabel())
+        timeAxis.setLowerMargin(0.0)
+        timeAxis.setUpperMargin(0.0)
+        # the rows are log-scale ranges; label them by their lowest time
+        rtimeAxis = NumberAxis(self.getYAxisLabel())
+        rtimeAxis.setTickUnit(NumberTickUnit(LatencyHeatmap.ROWS_PER_DOUBLING, LatencyHeatmap.getRowFormat()))
+        rtimeAxis.setRange(heatmap.getFirstRow(), heatmap.getLastRow() + 1)
+        plot = XYPlot(heatmap.getDataset(), timeAxis, rtimeAxis, renderer)
+        plot.setBackgroundPaint(javaColor.WHITE)
+        self.chart = JFreeChart(self.getTitle(), JFreeChart.DEFAULT_TITLE_FONT, plot, False)
+        countAxis = LogAxis("tests")
+        countAxis.setRange(1, max(2, heatmap.getMaxCount() + 1))
+        countAxis.setTickUnit(NumberTickUnit(0.5)) # 1, 3, 10, 32, 100...
+        countAxis.setNumberFormatOverride(javaNumberFormat.getIntegerInstance())
+        legend = PaintScaleLegend(paintScale, countAxis)
+        legend.setPosition(RectangleEdge.RIGHT)
+        legend.setSubdivisionCount(500)
+        legend.setMargin(4, 4, 4, 4)
+        self.chart.addSubtitle(legend)
+
+
+
 # Module constants
 
 COLOR_TXSEC_PASS=javaColor.green.darker()
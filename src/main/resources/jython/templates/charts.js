@@ -0,0 +1,352 @@
+/*
+  Draws the graphs of a report in the browser, from the series in the
+  series.js file of the report (see SeriesExport), when the analyzer is
+  run with client_charts=true.
+
+  The report page has <img data-graph="Search.perf.png"> elements instead
+  of .png images.  They are turned into canvases; the graphs in tooltips
+  are drawn when their tooltip is first shown, the others when the page
+  is loaded.
+*/
+
+var SERIES = null;
+var COLORS = ["#ff5555", "#5555ff", "#55ff55", "#ffff55", "#ff55ff", "#55ffff", "#ffafaf", "#808080"];
+
+// called by series.js
+function loadSeries(data) {
+    SERIES = data;
+}
+
+// bucket indices and scaled values are stored as differences, see SeriesExport
+function decodeSeries(series, label, color) {
+    var points = [], x = 0, y = 0;
+    for (var i = 0; i < series.y.length; i++) {
+        x = series.x ? x + series.x[i] : i;
+        y += series.y[i];
+        points.push([x * SERIES.msPerBucket / 1000, y / series.scale]);
+    }
+    return {label: label, color: color, points: points};
+}
+
+// the same graphs as the .png files written by ga/graph.py
+function getPlots(tx, type) {
+    if (type == "perf") {
+        return [
+            {weight: SERIES.weights[0], axis: "Transactions per second", zero: true,
+             series: [decodeSeries(tx.passed, "tx/sec passed", "#00b200"),
+                      decodeSeries(tx.failed, "tx/sec failed", "#ff0000")]},
+            {weight: SERIES.weights[1], axis: "Seconds", zero: false,
+             series: [decodeSeries(tx.mean, "mean response time", "#0000ff")]}
+        ];
+    }
+    if (type == "meanMax_rtime") {
+        var series = [decodeSeries(tx.mean, "mean response time", COLORS[0]),
+                      decodeSeries(tx.max, "max response time", COLORS[1])];
+        for (var p = 0; p < tx.percentiles.length; p++) {
+            series.push(decodeSeries(tx.percentiles[p], SERIES.percentiles[p] + " response time",
+                                     COLORS[(p + 2) % COLORS.length]));
+        }
+        return [{weight: 1, axis: "seconds", zero: true, series: series}];
+    }
+    if (type == "bandwidth") {
+        return [{weight: 1, axis: "", zero: true, series: [decodeSeries(tx.kbSec, "KB/sec", COLORS[0])]}];
+    }
+    if (type == "rtime") {
+        return [{weight: 1, axis: "response time, seconds", zero: false, stacked: true,
+                 series: [decodeSeries(tx.resolveHost, "resolveHost", "#ff0000"),
+                          decodeSeries(tx.connect, "connect", "#ffff00"),
+                          decodeSeries(tx.firstByte, "firstByte", "#ffc800"),
+                          decodeSeries(tx.complete, "complete", "#0000ff")]}];
+    }
+    return null;
+}
+
+function niceStep(range, ticks) {
+    var step = Math.pow(10, Math.floor(Math.log(range / ticks) / Math.LN10));
+    var error = range / ticks / step;
+    if (error >= 5) {
+        step *= 10;
+    } else if (error >= 2) {
+        step *= 5;
+    } else if (error >= 1.5) {
+        step *= 2;
+    }
+    return step;
+}
+
+function formatTick(value, step) {
+    return step >= 1 ? String(Math.round(value)) : value.toFixed(Math.ceil(-Math.log(step) / Math.LN10));
+}
+
+function drawPlot(ctx, plot, left, top, width, height, maxX, xAxis) {
+    var series = plot.series;
+    if (plot.stacked) {
+        // each series is drawn on top of the ones before it
+        var sums = [];
+        for (var s = 0; s < series.length; s++) {
+            for (var i = 0; i < series[s].points.length; i++) {
+                sums[i] = (sums[i] || 0) + series[s].points[i][1];
+                series[s].points[i] = [series[s].points[i][0], sums[i], sums[i] - series[s].points[i][1]];
+            }
+        }
+    }
+    var minY = Infinity, maxY = -Infinity;
+    for (var s = 0; s < series.length; s++) {
+        for (var i = 0; i < series[s].points.length; i++) {
+            minY = Math.min(minY, series[s].points[i][1]);
+            maxY = Math.max(maxY, series[s].points[i][1]);
+        }
+    }
+    if (minY == Infinity) {
+        minY = maxY = 0;
+    }
+    if (plot.zero || plot.stacked) {
+        minY = Math.min(0, minY);
+    }
+    if (maxY == minY) {
+        maxY = minY + 1;
+    }
+    var step = niceStep(maxY - minY, Math.max(2, Math.floor(height / 40)));
+    minY = Math.floor(minY / step) * step;
+    maxY = Math.ceil(maxY / step) * step;
+    var scaleX = width / Math.max(maxX, 1e-9), scaleY = height / (maxY - minY);
+
+    ctx.fillStyle = "#c0c0c0";
+    ctx.fillRect(left, top, width, height);
+    ctx.strokeStyle = "#ffffff";
+    ctx.fillStyle = "#000000";
+    ctx.textAlign = "right";
+    for (var y = minY; y <= maxY + step / 2; y += step) {
+        var py = top + height - (y - minY) * scaleY;
+        ctx.beginPath();
+        ctx.moveTo(left, py);
+        ctx.lineTo(left + width, py);
+        ctx.stroke();
+        ctx.fillText(formatTick(y, step), left - 4, py + 4);
+    }
+    ctx.save();
+    ctx.translate(12, top + height / 2);
+    ctx.rotate(-Math.PI / 2);
+    ctx.textAlign = "center";
+    ctx.fillText(plot.axis, 0, 0);
+    ctx.restore();
+    if (xAxis) {
+        var stepX = niceStep(maxX || 1, Math.max(2, Math.floor(width / 80)));
+        ctx.textAlign = "center";
+        for (var x = 0; x <= maxX; x += stepX) {
+            var px = left + x * scaleX;
+            ctx.beginPath();
+            ctx.moveTo(px, top);
+            ctx.lineTo(px, top + height);
+            ctx.stroke();
+            ctx.fillText(formatTick(x, stepX), px, top + height + 14);
+        }
+        ctx.fillText("Elapsed time, seconds", left + width / 2, top + height + 30);
+    }
+
+    for (var s = 0; s < series.length; s++) {
+        var points = series[s].points;
+        if (points.length == 0) {
+            continue;
+        }
+        ctx.beginPath();
+        for (var i = 0; i < points.length; i++) {
+            var px = left + points[i][0] * scaleX, py = top + height - (points[i][1] - minY) * scaleY;
+            if (i == 0) {
+                ctx.moveTo(px, py);
+            } else {
+                ctx.lineTo(px, py);
+            }
+        }
+        if (plot.stacked) {
+            for (var i = points.length - 1; i >= 0; i--) {
+                ctx.lineTo(left + points[i][0] * scaleX, top + height - (points[i][2] - minY) * scaleY);
+            }
+            ctx.fillStyle = series[s].color;
+            ctx.fill();
+        } else {
+            ctx.strokeStyle = series[s].color;
+            ctx.stroke();
+        }
+    }
+}
+
+// the lowest response time of a heatmap row, see LatencyHeatmap
+function rowLowestMs(row) {
+    var bucket = (row >> 4) - 1, sub = (row & 15) + 16;
+    if (bucket < 0) {
+        sub -= 16;
+        bucket = 0;
+    }
+    return sub * Math.pow(2, bucket);
+}
+
+function formatMs(ms) {
+    return ms < 1000 ? ms + " ms" : Math.round(ms / 10) / 100 + " s";
+}
+
+function drawHeatmap(ctx, heatmap, left, top, width, height) {
+    var rows = heatmap.lastRow - heatmap.firstRow + 1;
+    var columns = 0, cell = 0, cells = [];
+    for (var i = 0; i < heatmap.cells.length; i++) {
+        cell += heatmap.cells[i];
+        cells.push(cell);
+        columns = Math.max(columns, Math.floor(cell / rows) + 1);
+    }
+    var maxX = columns * heatmap.columnSeconds, maxCount = 0;
+    for (var i = 0; i < heatmap.counts.length; i++) {
+        maxCount = Math.max(maxCount, heatmap.counts[i]);
+    }
+    // the steps of LatencyHeatmap.getPaintScale()
+    var colors = ["#ffffcc", "#ffeda0", "#fed976", "#feb24c", "#fd8d3c", "#fc4e2a", "#e31a1c", "#b10026"];
+    var upper = Math.max(2, maxCount + 1);
+    var cellWidth = width / Math.max(columns, 1), cellHeight = height / rows;
+    ctx.strokeStyle = "#808080";
+    ctx.strokeRect(left, top, width, height);
+    for (var i = 0; i < cells.length; i++) {
+        var column = Math.floor(cells[i] / rows), row = cells[i] % rows;
+        var color = Math.floor(colors.length * Math.log(heatmap.counts[i]) / Math.log(upper));
+        ctx.fillStyle = colors[Math.min(colors.length - 1, color)];
+        ctx.fillRect(left + column * cellWidth, top + height - (row + 1) * cellHeight,
+                     Math.ceil(cellWidth), Math.ceil(cellHeight));
+    }
+    ctx.fillStyle = "#000000";
+    ctx.textAlign = "right";
+    for (var row = Math.ceil(heatmap.firstRow / 16) * 16; row <= heatmap.lastRow + 1; row += 16) {
+        ctx.fillText(formatMs(rowLowestMs(row)), left - 4, top + height - (row - heatmap.firstRow) * cellHeight + 4);
+    }
+    ctx.textAlign = "center";
+    var stepX = niceStep(maxX || 1, Math.max(2, Math.floor(width / 80)));
+    for (var x = 0; x <= maxX; x += stepX) {
+        ctx.fillText(formatTick(x, stepX), left + x * width / Math.max(maxX, 1e-9), top + height + 14);
+    }
+    ctx.fillText("Elapsed time, seconds", left + width / 2, top + height + 30);
+    // the color scale, from 1 test to the most tests of a cell
+    for (var i = 0; i < colors.length; i++) {
+        ctx.fillStyle = colors[i];
+        ctx.fillRect(left + width + 20, top + height - (i + 1) * height / colors.length, 16, height / colors.length);
+    }
+    ctx.fillStyle = "#000000";
+    ctx.textAlign = "left";
+    ctx.fillText("1", left + width + 40, top + height);
+    ctx.fillText(String(maxCount), left + width + 40, top + 10);
+}
+
+function drawGraph(canvas) {
+    // e.g. "Search.meanMax_rtime.png"
+    var name = canvas.getAttribute("data-graph").replace(/\.png$/, "");
+    var dot = name.lastIndexOf(".");
+    var tx = SERIES ? SERIES.transactions[name.substring(0, dot)] : null;
+    var type = name.substring(dot + 1);
+    var size = SERIES ? SERIES.sizes[type] : null;
+    if (!tx || !size || (!SERIES.http && (type == "bandwidth" || type == "rtime"))
+            || (type == "heatmap" && !tx.heatmap)) {
+        return;
+    }
+    canvas.width = size[0];
+    canvas.height = size[1];
+    var ctx = canvas.getContext("2d");
+    ctx.fillStyle = "#ffffff";
+    ctx.fillRect(0, 0, size[0], size[1]);
+    ctx.fillStyle = "#000000";
+    ctx.textAlign = "center";
+    ctx.font = "bold 18px sans-serif";
+    ctx.fillText(tx.name, size[0] / 2, 24);
+    ctx.font = "12px sans-serif";
+    var subtitles = {perf: "Performance", meanMax_rtime: "Response Time Details",
+                     bandwidth: "Bandwidth Used", rtime: "Response Time",
+                     heatmap: "Response Time Distribution"};
+    var top = 30;
+    ctx.fillText(subtitles[type], size[0] / 2, top + 12);
+    top += 16;
+    if (SERIES.date) {
+        ctx.fillText(SERIES.date, size[0] / 2, top + 12);
+        top += 16;
+    }
+    if (type == "heatmap") {
+        drawHeatmap(ctx, tx.heatmap, 70, top + 10, size[0] - 70 - 60, size[1] - top - 10 - 40);
+        canvas.removeAttribute("data-graph");
+        return;
+    }
+    var plots = getPlots(tx, type);
+    var maxX = 0, legend = [];
+    for (var p = 0; p < plots.length; p++) {
+        for (var s = 0; s < plots[p].series.length; s++) {
+            var points = plots[p].series[s].points;
+            if (points.length > 0) {
+                maxX = Math.max(maxX, points[points.length - 1][0]);
+            }
+            legend.push(plots[p].series[s]);
+        }
+    }
+    var left = 70, width = size[0] - left - 10;
+    var height = size[1] - top - 10 - 40 - 24 - (plots.length - 1) * 10;
+    var weights = 0;
+    for (var p = 0; p < plots.length; p++) {
+        weights += plots[p].weight;
+    }
+    for (var p = 0; p < plots.length; p++) {
+        var plotHeight = Math.max(10, height * plots[p].weight / weights);
+        drawPlot(ctx, plots[p], left, top + 10, width, plotHeight, maxX, p == plots.length - 1);
+        top += 10 + plotHeight;
+    }
+    // legend below the x axis
+    var x = left, y = top + 54;
+    ctx.textAlign = "left";
+    for (var s = 0; s < legend.length; s++) {
+        ctx.fillStyle = legend[s].color;
+        ctx.fillRect(x, y - 8, 10, 8);
+        ctx.fillStyle = "#000000";
+        ctx.fillText(legend[s].label, x + 14, y);
+        x += 24 + ctx.measureText(legend[s].label).width;
+    }
+    canvas.removeAttribute("data-graph");
+}
+
+function drawGraphsIn(element) {
+    var canvases = element.getElementsByTagName("canvas");
+    for (var i = 0; i < canvases.length; i++) {
+        if (canvases[i].getAttribute("data-graph")) {
+            drawGraph(canvases[i]);
+        }
+    }
+}
+
+function initCharts() {
+    var images = document.getElementsByTagName("img");
+    for (var i = images.length - 1; i >= 0; i--) {
+        var graph = images[i].getAttribute("data-graph");
+        if (!graph) {
+            continue;
+        }
+        var canvas = document.createElement("canvas");
+        canvas.setAttribute("data-graph", graph);
+        images[i].parentNode.replaceChild(canvas, images[i]);
+        // tooltips are hidden spans, drawn when shown
+        if (canvas.parentNode.nodeName.toLowerCase() != "span") {
+            drawGraph(canvas);
+        }
+    }
+    // the graph links have no .png to show
+    var links = document.getElementsByTagName("a");
+    for (var i = 0; i < links.length; i++) {
+        if (/\.png$/.test(links[i].getAttribute("href"))) {
+            links[i].setAttribute("href", "#");
+            links[i].onclick = function() { return false; };
+        }
+    }
+    if (typeof TagToTip == "function") {
+        var showTip = TagToTip;
+        TagToTip = function(id) {
+            var tip = document.getElementById(id);
+            if (tip) {
+                drawGraphsIn(tip);
+            }
+            return showTip.apply(this, arguments);
+        };
+    }
+}
+
+if (window.addEventListener) {
+    window.addEventListener("load", initCharts, false);
+}